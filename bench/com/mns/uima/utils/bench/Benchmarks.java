@@ -0,0 +1,36 @@
+package com.mns.uima.utils.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler so allocation per operation
+ * (gc.alloc.rate.norm, bytes per op) is reported next to ops/s.
+ * <p>
+ * The bench folder is a source folder of its own and is not part of the jar. Its
+ * pom.xml compiles it with the utilities and JMH's annotation processor into
+ * bench/target/benchmarks.jar, which runs this class:
+ * <pre>
+ * mvn -f bench/pom.xml package
+ * java -jar bench/target/benchmarks.jar -p documentSize=1000000
+ * </pre>
+ * Arguments are JMH command line options, e.g. a benchmark name pattern.
+ */
+public final class Benchmarks {
+
+	private Benchmarks() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class);
+		if (commandLine.getIncludes().isEmpty())
+			options.include(Benchmarks.class.getPackage().getName());
+		new Runner(options.build()).run();
+	}
+}
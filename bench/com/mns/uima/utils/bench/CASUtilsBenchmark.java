@@ -0,0 +1,109 @@
+package com.mns.uima.utils.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mns.uima.utils.CASUtils;
+import com.mns.uima.utils.PrimitiveAFS;
+
+/**
+ * Throughput of the CASUtils extraction and update methods on a synthetic ICA CAS.
+ * <p>
+ * Each benchmark is one call, or for the per annotation methods one call on every
+ * entity in the document. Run through {@link Benchmarks} to also get allocation
+ * per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CASUtilsBenchmark {
+	private static final ArrayList<String> FEATURES = new ArrayList<String>(Arrays.asList(
+			"category", "confidence", "count", "verified", "sentence", "lemma", "tokens", "gender"));
+
+	@Param({ "10000", "100000" })
+	public int documentSize;
+
+	@Param({ "0.1" })
+	public double entityDensity;
+
+	@Param({ "100" })
+	public int metaFields;
+
+	private CAS cas;
+	private JCas jcas;
+	private List<AnnotationFS> entities;
+
+	@Setup
+	public void setup() throws Exception {
+		SyntheticCASGenerator generator = new SyntheticCASGenerator();
+		generator.setDocumentSize(documentSize);
+		generator.setEntityDensity(entityDensity);
+		generator.setMetaFields(metaFields);
+		cas = generator.generate();
+		jcas = cas.getJCas();
+		entities = CASUtils.extractAFSList(jcas, SyntheticCASGenerator.ENTITY_TYPE);
+	}
+
+	@Benchmark
+	public ArrayList<AnnotationFS> extractAFSList() {
+		return CASUtils.extractAFSList(jcas, SyntheticCASGenerator.ENTITY_TYPE);
+	}
+
+	@Benchmark
+	public ArrayList<PrimitiveAFS> extractPrimitiveAFSListFeatures() {
+		return CASUtils.extractPrimitiveAFSList(jcas, SyntheticCASGenerator.ENTITY_TYPE, FEATURES);
+	}
+
+	@Benchmark
+	public ArrayList<PrimitiveAFS> extractPrimitiveAFSListAll() {
+		return CASUtils.extractPrimitiveAFSList(jcas, SyntheticCASGenerator.ENTITY_TYPE, true);
+	}
+
+	@Benchmark
+	public ArrayList<PrimitiveAFS> extractPrimitiveAFSListTokens() {
+		return CASUtils.extractPrimitiveAFSList(jcas, SyntheticCASGenerator.TOKEN_TYPE, true);
+	}
+
+	@Benchmark
+	public void extractPrimitiveFeatureAsString(Blackhole blackhole) {
+		for (AnnotationFS entity : entities) {
+			blackhole.consume(CASUtils.extractPrimitiveFeatureAsString(entity, "category"));
+			blackhole.consume(CASUtils.extractPrimitiveFeatureAsString(entity, "sentence"));
+			blackhole.consume(CASUtils.extractPrimitiveFeatureAsString(entity, "lemma"));
+		}
+	}
+
+	@Benchmark
+	public void setPrimitiveFeature(Blackhole blackhole) {
+		for (AnnotationFS entity : entities) {
+			blackhole.consume(CASUtils.setPrimitiveFeature(entity, "count", 3));
+			blackhole.consume(CASUtils.setPrimitiveFeature(entity, "category", "person"));
+		}
+	}
+
+	@Benchmark
+	public Object extractICAMetaFields() {
+		return CASUtils.extractICAMetaFields(cas);
+	}
+}
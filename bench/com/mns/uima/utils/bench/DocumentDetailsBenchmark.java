@@ -0,0 +1,52 @@
+package com.mns.uima.utils.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mns.uima.utils.DocumentDetails;
+
+/**
+ * Throughput of DocumentDetails extraction on a synthetic ICA CAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentDetailsBenchmark {
+	private JCas jcas;
+
+	@Setup
+	public void setup() throws Exception {
+		jcas = new SyntheticCASGenerator().generate().getJCas();
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public String extractDocumentDetails() {
+		DocumentDetails.extractDocumentDetails(jcas);
+		return DocumentDetails.id;
+	}
+
+	@Benchmark
+	public DocumentDetails extract() {
+		return DocumentDetails.extract(jcas);
+	}
+
+	@Benchmark
+	public DocumentDetails extractAllMetaData() {
+		return DocumentDetails.extract(jcas, true);
+	}
+}
@@ -0,0 +1,259 @@
+package com.mns.uima.utils.bench;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Random;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.ArrayFS;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+
+/**
+ * Builds CASes shaped like those of an ICA pipeline for benchmarks.
+ * <p>
+ * The type system, bundled as ICATypeSystem.xml, has a DocumentAnnotation with
+ * id and esDocumentMetaData, com.ibm.es.oze.MetaField and ICMMetaField, sentence,
+ * paragraph, token and lemma types as ICA names them, and an entity type with
+ * primitive, reference and array features. Documents are made of words from a
+ * fixed vocabulary with a seeded random so the same settings always give the
+ * same CAS.
+ * <p>
+ * Entity density is the fraction of tokens covered by an entity, every other
+ * entity is a Person subtype so extraction sees more than one layout.
+ */
+public final class SyntheticCASGenerator {
+	public static final String SENTENCE_TYPE = "uima.tt.SentenceAnnotation";
+	public static final String PARAGRAPH_TYPE = "uima.tt.ParagraphAnnotation";
+	public static final String TOKEN_TYPE = "uima.tt.TokenAnnotation";
+	public static final String LEMMA_TYPE = "uima.tt.Lemma";
+	public static final String ENTITY_TYPE = "com.mns.bench.Entity";
+	public static final String PERSON_TYPE = "com.mns.bench.Person";
+	public static final String METAFIELD_TYPE = "com.ibm.es.oze.MetaField";
+	public static final String ICM_METAFIELD_TYPE = "com.ibm.es.oze.ICMMetaField";
+	public static final String DOCUMENT_METADATA_TYPE = "com.ibm.es.tt.DocumentMetaData";
+	public static final String TYPE_SYSTEM_DESCRIPTOR = "ICATypeSystem.xml";
+
+	private static final String[] WORDS = { "the", "annotation", "index", "of", "a", "document",
+			"contains", "tokens", "and", "sentences", "which", "are", "extracted", "by", "analysis",
+			"engines", "running", "in", "pipeline", "Martin", "London", "IBM", "search", "content",
+			"crawler", "metadata", "language", "throughput", "latency", "with" };
+	private static final String[] CATEGORIES = { "person", "place", "organisation", "product", "date" };
+
+	private int documentSize = 10000;
+	private double entityDensity = 0.1;
+	private int metaFields = 100;
+	private long seed = 42;
+
+	/**
+	 * Load the ICA shaped type system bundled as ICATypeSystem.xml.
+	 * <p>
+	 * @return the type system
+	 * @throws ResourceInitializationException if the descriptor cannot be read.
+	 */
+	public static TypeSystemDescription typeSystem() throws ResourceInitializationException {
+		URL descriptor = SyntheticCASGenerator.class.getResource(TYPE_SYSTEM_DESCRIPTOR);
+		if (descriptor == null)
+			throw new ResourceInitializationException(new FileNotFoundException(TYPE_SYSTEM_DESCRIPTOR));
+		try {
+			return UIMAFramework.getXMLParser().parseTypeSystemDescription(new XMLInputSource(descriptor));
+		} catch (InvalidXMLException | IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * Create an empty CAS with the ICA shaped type system.
+	 * <p>
+	 * @return the CAS
+	 * @throws ResourceInitializationException
+	 */
+	public static CAS createCas() throws ResourceInitializationException {
+		return CasCreationUtils.createCas(typeSystem(), null, null);
+	}
+
+	/**
+	 * Create a CAS and fill it with a document.
+	 * <p>
+	 * @return the CAS
+	 * @throws ResourceInitializationException
+	 */
+	public CAS generate() throws ResourceInitializationException {
+		CAS cas = createCas();
+		fill(cas, 0);
+		return cas;
+	}
+
+	/**
+	 * Reset a CAS and fill it with a document.
+	 * <p>
+	 * @param  cas CAS created by {@link #createCas()}
+	 * @param  documentNumber varies the random content and the document id
+	 */
+	public void fill(CAS cas, int documentNumber) {
+		cas.reset();
+		Random random = new Random(seed + documentNumber);
+		TypeSystem ts = cas.getTypeSystem();
+		Type sentenceType = ts.getType(SENTENCE_TYPE);
+		Type paragraphType = ts.getType(PARAGRAPH_TYPE);
+		Type tokenType = ts.getType(TOKEN_TYPE);
+		Type lemmaType = ts.getType(LEMMA_TYPE);
+		Type entityType = ts.getType(ENTITY_TYPE);
+		Type personType = ts.getType(PERSON_TYPE);
+		Feature lemmaKey = lemmaType.getFeatureByBaseName("key");
+		Feature lemmaFrequency = lemmaType.getFeatureByBaseName("frequency");
+		Feature tokenLemma = tokenType.getFeatureByBaseName("lemma");
+		Feature tokenPosTag = tokenType.getFeatureByBaseName("posTag");
+		Feature category = entityType.getFeatureByBaseName("category");
+		Feature confidence = entityType.getFeatureByBaseName("confidence");
+		Feature count = entityType.getFeatureByBaseName("count");
+		Feature verified = entityType.getFeatureByBaseName("verified");
+		Feature sentence = entityType.getFeatureByBaseName("sentence");
+		Feature entityLemma = entityType.getFeatureByBaseName("lemma");
+		Feature tokens = entityType.getFeatureByBaseName("tokens");
+		Feature gender = personType.getFeatureByBaseName("gender");
+
+		// lemmas are shared between tokens as in ICA
+		FeatureStructure[] lemmas = new FeatureStructure[WORDS.length];
+		for (int i = 0; i < WORDS.length; i++) {
+			lemmas[i] = cas.createFS(lemmaType);
+			lemmas[i].setStringValue(lemmaKey, WORDS[i].toLowerCase());
+			lemmas[i].setIntValue(lemmaFrequency, i + 1);
+			cas.addFsToIndexes(lemmas[i]);
+		}
+
+		StringBuilder text = new StringBuilder(documentSize + 32);
+		int paragraphBegin = 0;
+		int sentencesInParagraph = 0;
+		int entities = 0;
+		while (text.length() < documentSize) {
+			int sentenceBegin = text.length();
+			int sentenceTokens = 8 + random.nextInt(20);
+			AnnotationFS sentenceFS = cas.createAnnotation(sentenceType, sentenceBegin, sentenceBegin);
+			for (int t = 0; t < sentenceTokens; t++) {
+				int w = random.nextInt(WORDS.length);
+				int begin = text.length();
+				text.append(WORDS[w]);
+				AnnotationFS token = cas.createAnnotation(tokenType, begin, text.length());
+				token.setFeatureValue(tokenLemma, lemmas[w]);
+				token.setStringValue(tokenPosTag, w % 3 == 0 ? "noun" : "verb");
+				cas.addFsToIndexes(token);
+				if (random.nextDouble() < entityDensity) {
+					boolean isPerson = (entities++ & 1) == 1;
+					AnnotationFS entity = cas.createAnnotation(isPerson ? personType : entityType, begin, text.length());
+					entity.setStringValue(category, CATEGORIES[w % CATEGORIES.length]);
+					entity.setFloatValue(confidence, random.nextFloat());
+					entity.setIntValue(count, 1 + random.nextInt(10));
+					entity.setBooleanValue(verified, random.nextBoolean());
+					entity.setFeatureValue(sentence, sentenceFS);
+					entity.setFeatureValue(entityLemma, lemmas[w]);
+					ArrayFS entityTokens = cas.createArrayFS(1);
+					entityTokens.set(0, token);
+					entity.setFeatureValue(tokens, entityTokens);
+					if (isPerson)
+						entity.setStringValue(gender, random.nextBoolean() ? "f" : "m");
+					cas.addFsToIndexes(entity);
+				}
+				text.append(t == sentenceTokens - 1 ? ". " : " ");
+			}
+			sentenceFS.setIntValue(cas.getEndFeature(), text.length() - 1);
+			cas.addFsToIndexes(sentenceFS);
+			if (++sentencesInParagraph == 5 || text.length() >= documentSize) {
+				cas.addFsToIndexes(cas.createAnnotation(paragraphType, paragraphBegin, text.length() - 1));
+				text.append('\n');
+				paragraphBegin = text.length();
+				sentencesInParagraph = 0;
+			}
+		}
+		cas.setDocumentText(text.toString());
+		cas.setDocumentLanguage("en");
+
+		addMetaFields(cas, ts.getType(METAFIELD_TYPE), metaFields, random);
+		addMetaFields(cas, ts.getType(ICM_METAFIELD_TYPE), metaFields / 10, random);
+		addDocumentMetaData(cas, documentNumber);
+	}
+
+	private static void addMetaFields(CAS cas, Type type, int number, Random random) {
+		Feature name = type.getFeatureByBaseName("name");
+		Feature value = type.getFeatureByBaseName("value");
+		for (int i = 0; i < number; i++) {
+			FeatureStructure fs = cas.createFS(type);
+			// a few names repeat, as multi-valued fields do
+			fs.setStringValue(name, "field" + (i % 10 == 9 ? i - 1 : i));
+			fs.setStringValue(value, WORDS[random.nextInt(WORDS.length)] + i);
+			cas.addFsToIndexes(fs);
+		}
+	}
+
+	private static void addDocumentMetaData(CAS cas, int documentNumber) {
+		TypeSystem ts = cas.getTypeSystem();
+		Type type = ts.getType(DOCUMENT_METADATA_TYPE);
+		String url = "file:///data/corpus/document%20" + documentNumber + ".txt";
+		FeatureStructure metaData = cas.createFS(type);
+		metaData.setStringValue(type.getFeatureByBaseName("url"), url);
+		metaData.setStringValue(type.getFeatureByBaseName("docType"), "text/plain");
+		metaData.setStringValue(type.getFeatureByBaseName("title"), "document " + documentNumber + ".txt");
+		metaData.setStringValue(type.getFeatureByBaseName("dataSource"), "winfs");
+		metaData.setStringValue(type.getFeatureByBaseName("dataSourceName"), "Windows file system crawler 1");
+		metaData.setStringValue(type.getFeatureByBaseName("date"), "1341170706000");
+		metaData.setStringValue(type.getFeatureByBaseName("crawlspaceId"), "t1341171863373");
+		metaData.setStringValue(type.getFeatureByBaseName("crawlerId"), "col_17167.WIN_52670");
+		metaData.setStringValue(type.getFeatureByBaseName("documentId"), Integer.toString(documentNumber));
+		cas.addFsToIndexes(metaData);
+		AnnotationFS document = cas.getDocumentAnnotation();
+		Type documentType = document.getType();
+		document.setStringValue(documentType.getFeatureByBaseName("id"), url);
+		document.setFeatureValue(documentType.getFeatureByBaseName("esDocumentMetaData"), metaData);
+	}
+
+	public int getDocumentSize() {
+		return documentSize;
+	}
+
+	/**
+	 * @param  documentSize approximate number of characters in a document.
+	 */
+	public void setDocumentSize(int documentSize) {
+		this.documentSize = documentSize;
+	}
+
+	public double getEntityDensity() {
+		return entityDensity;
+	}
+
+	/**
+	 * @param  entityDensity fraction of tokens, between 0 and 1, covered by an entity.
+	 */
+	public void setEntityDensity(double entityDensity) {
+		this.entityDensity = entityDensity;
+	}
+
+	public int getMetaFields() {
+		return metaFields;
+	}
+
+	/**
+	 * @param  metaFields number of MetaFields, a tenth as many ICMMetaFields are added.
+	 */
+	public void setMetaFields(int metaFields) {
+		this.metaFields = metaFields;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
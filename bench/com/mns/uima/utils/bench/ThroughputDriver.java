@@ -0,0 +1,379 @@
+package com.mns.uima.utils.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.XMLInputSource;
+
+import com.mns.uima.utils.CASUtils;
+import com.mns.uima.utils.DocumentDetails;
+import com.mns.uima.utils.ExtractionOptions;
+import com.mns.uima.utils.MetaFields;
+import com.mns.uima.utils.StringInterner;
+
+/**
+ * Multi-threaded load driver running an extraction workload over a corpus of CASes.
+ * <p>
+ * The corpus is a directory of XMI (.xmi) or binary (.bin, any UIMA binary form
+ * including compressed) CASes, optionally gzipped (.gz). Every document is read
+ * into its own CAS and the CASes form a pool, a thread takes a CAS, runs the
+ * workload on it and returns it, so no CAS is used by two threads at once. There
+ * are at least as many CASes as threads, documents are read more than once if needed.
+ * <p>
+ * The workload extracts the given types and features and optionally meta fields
+ * and document details. After a warm up the driver reports documents and extracted
+ * items (annotations, meta fields, document details) per second, p50, p99 and
+ * maximum latency per document, garbage collections and bytes allocated per
+ * document. Several thread counts can be given to check scaling.
+ * <p>
+ * No ICA server is needed, the bundled ICATypeSystem.xml is used unless another
+ * type system descriptor is given, and --generate writes a synthetic corpus.
+ * Run without arguments for usage.
+ */
+public final class ThroughputDriver {
+	private static final String USAGE = "ThroughputDriver --corpus dir [options]\n"
+			+ "  --threads n[,n...]     threads, several counts are run in turn (default: processors)\n"
+			+ "  --warmup seconds       warm up before each run (default 5)\n"
+			+ "  --seconds seconds      measured time of each run (default 20)\n"
+			+ "  --types t[,t...]       annotation types to extract (default " + SyntheticCASGenerator.ENTITY_TYPE + ")\n"
+			+ "  --features f[,f...]    feature base names to extract (default all features of each type)\n"
+			+ "  --metafields true|false    extract MetaFields and ICMMetaFields (default true)\n"
+			+ "  --documentdetails true|false  extract DocumentDetails (default true)\n"
+			+ "  --compact true|false   extract CompactPrimitiveAFS (default false)\n"
+			+ "  --lazy true|false      lazy covered text (default false)\n"
+			+ "  --intern true|false    intern feature values (default false)\n"
+			+ "  --typesystem file      type system descriptor (default bundled ICATypeSystem.xml)\n"
+			+ "  --generate n           first write n synthetic documents to the corpus directory\n"
+			+ "  --format xmi|bin       format of generated documents (default xmi)\n"
+			+ "  --documentsize chars   size of generated documents (default 10000)";
+
+	private final Map<String, String> settings;
+	private final ExtractionOptions options = new ExtractionOptions();
+	private final List<String> types;
+	private final List<String> features;
+	private final boolean metaFields;
+	private final boolean documentDetails;
+	private final Map<String, List<String>> typeFeatures = new HashMap<String, List<String>>();
+
+	private ThroughputDriver(Map<String, String> settings) {
+		this.settings = settings;
+		types = Arrays.asList(setting("types", SyntheticCASGenerator.ENTITY_TYPE).split(","));
+		features = settings.containsKey("features") ? Arrays.asList(settings.get("features").split(",")) : null;
+		metaFields = Boolean.parseBoolean(setting("metafields", "true"));
+		documentDetails = Boolean.parseBoolean(setting("documentdetails", "true"));
+		options.setCompact(Boolean.parseBoolean(setting("compact", "false")));
+		options.setLazyCoveredText(Boolean.parseBoolean(setting("lazy", "false")));
+		if (Boolean.parseBoolean(setting("intern", "false")))
+			options.setInterner(new StringInterner());
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("--")) {
+				settings.clear();
+				break;
+			}
+			settings.put(args[i].substring(2), args[i + 1]);
+		}
+		if (!settings.containsKey("corpus") || args.length % 2 != 0) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		new ThroughputDriver(settings).run();
+	}
+
+	private String setting(String name, String defaultValue) {
+		String value = settings.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	private void run() throws Exception {
+		File corpus = new File(settings.get("corpus"));
+		TypeSystemDescription typeSystem = settings.containsKey("typesystem")
+				? UIMAFramework.getXMLParser().parseTypeSystemDescription(new XMLInputSource(settings.get("typesystem")))
+				: SyntheticCASGenerator.typeSystem();
+		int generate = Integer.parseInt(setting("generate", "0"));
+		if (generate > 0)
+			generate(corpus, generate);
+
+		int[] threadCounts = threadCounts(setting("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+		int maxThreads = 0;
+		for (int threads : threadCounts)
+			maxThreads = Math.max(maxThreads, threads);
+		List<CAS> cases = load(corpus, typeSystem, maxThreads);
+		resolveFeatures(cases.get(0));
+
+		int warmup = Integer.parseInt(setting("warmup", "5"));
+		int seconds = Integer.parseInt(setting("seconds", "20"));
+		System.out.println("threads  docs/s   items/s  p50(us)  p99(us)  max(us)  gc  gc(ms)  bytes/doc");
+		for (int threads : threadCounts)
+			System.out.println(measure(cases, threads, warmup, seconds));
+	}
+
+	private static int[] threadCounts(String value) {
+		String[] counts = value.split(",");
+		int[] threadCounts = new int[counts.length];
+		for (int i = 0; i < counts.length; i++)
+			threadCounts[i] = Integer.parseInt(counts[i].trim());
+		return threadCounts;
+	}
+
+	private void generate(File corpus, int documents) throws Exception {
+		if (!corpus.isDirectory() && !corpus.mkdirs())
+			throw new IOException("Cannot create " + corpus);
+		boolean binary = "bin".equals(setting("format", "xmi"));
+		SyntheticCASGenerator generator = new SyntheticCASGenerator();
+		generator.setDocumentSize(Integer.parseInt(setting("documentsize", "10000")));
+		CAS cas = SyntheticCASGenerator.createCas();
+		for (int i = 0; i < documents; i++) {
+			generator.fill(cas, i);
+			File file = new File(corpus, String.format("doc%06d.%s", i, binary ? "bin" : "xmi"));
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+				if (binary)
+					Serialization.serializeWithCompression(cas, out);
+				else
+					XmiCasSerializer.serialize(cas, out);
+			}
+		}
+		System.out.println("Generated " + documents + " documents in " + corpus);
+	}
+
+	private static List<CAS> load(File corpus, TypeSystemDescription typeSystem, int minimum) throws Exception {
+		List<File> files = new ArrayList<File>();
+		File[] listed = corpus.listFiles();
+		if (listed != null) {
+			for (File file : listed) {
+				String name = file.getName().toLowerCase();
+				if (name.endsWith(".gz"))
+					name = name.substring(0, name.length() - 3);
+				if (name.endsWith(".xmi") || name.endsWith(".bin"))
+					files.add(file);
+			}
+		}
+		if (files.isEmpty())
+			throw new IOException("No .xmi or .bin documents in " + corpus);
+		files.sort(null);
+
+		List<CAS> cases = new ArrayList<CAS>();
+		for (int i = 0; i < Math.max(files.size(), minimum); i++) {
+			File file = files.get(i % files.size());
+			CAS cas = CasCreationUtils.createCas(typeSystem, null, null);
+			try (InputStream in = open(file)) {
+				if (file.getName().toLowerCase().contains(".xmi"))
+					XmiCasDeserializer.deserialize(in, cas, true);
+				else
+					Serialization.deserializeCAS(cas, in);
+			}
+			cases.add(cas);
+		}
+		System.out.println("Loaded " + files.size() + " documents into " + cases.size() + " CASes");
+		return cases;
+	}
+
+	private static InputStream open(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		return file.getName().toLowerCase().endsWith(".gz") ? new GZIPInputStream(in) : in;
+	}
+
+	private void resolveFeatures(CAS cas) {
+		for (String typeName : types) {
+			List<String> names = features;
+			if (names == null) {
+				names = new ArrayList<String>();
+				Type type = cas.getTypeSystem().getType(typeName);
+				if (type != null) {
+					for (Feature ft : type.getFeatures())
+						names.add(ft.getShortName());
+				}
+			}
+			typeFeatures.put(typeName, names);
+		}
+	}
+
+	/**
+	 * Run the workload on one document.
+	 * <p>
+	 * @return number of annotations and meta fields extracted.
+	 */
+	private int process(CAS cas) throws Exception {
+		JCas jcas = cas.getJCas();
+		int extracted = 0;
+		for (String typeName : types)
+			extracted += CASUtils.extractPrimitiveAFSList(jcas, typeName, typeFeatures.get(typeName), options).size();
+		if (metaFields) {
+			MetaFields fields = MetaFields.extract(cas);
+			extracted += fields.getICAFields().valueCount() + fields.getICMFields().valueCount();
+		}
+		if (documentDetails && DocumentDetails.extract(jcas).getId() != null)
+			extracted++;
+		return extracted;
+	}
+
+	private String measure(List<CAS> cases, int threads, int warmupSeconds, int seconds) throws Exception {
+		BlockingQueue<CAS> pool = new ArrayBlockingQueue<CAS>(cases.size(), false, cases);
+		long start = System.nanoTime();
+		long measureStart = start + warmupSeconds * 1000000000L;
+		long end = measureStart + seconds * 1000000000L;
+
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(pool, measureStart, end);
+			workers[i].start();
+		}
+		sleepUntil(measureStart);
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		for (Worker worker : workers)
+			worker.join();
+		gcCount = gcCount() - gcCount;
+		gcTime = gcTime() - gcTime;
+
+		int documents = 0;
+		long extracted = 0;
+		long allocated = 0;
+		for (Worker worker : workers) {
+			if (worker.failure != null)
+				throw worker.failure;
+			documents += worker.count;
+			extracted += worker.extracted;
+			allocated = allocated < 0 || worker.allocated < 0 ? -1 : allocated + worker.allocated;
+		}
+		long[] latencies = new long[documents];
+		int n = 0;
+		for (Worker worker : workers) {
+			System.arraycopy(worker.latencies, 0, latencies, n, worker.count);
+			n += worker.count;
+		}
+		Arrays.sort(latencies);
+		return String.format("%7d %7.0f %9.0f %8.0f %8.0f %8.0f %3d %7d %10s", threads,
+				documents / (double) seconds,
+				extracted / (double) seconds,
+				percentile(latencies, 50) / 1000.0,
+				percentile(latencies, 99) / 1000.0,
+				(documents == 0 ? 0 : latencies[documents - 1]) / 1000.0,
+				gcCount, gcTime,
+				allocated < 0 || documents == 0 ? "n/a" : Long.toString(allocated / documents));
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0)
+			return 0;
+		int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static void sleepUntil(long time) throws InterruptedException {
+		long wait;
+		while ((wait = time - System.nanoTime()) > 0)
+			Thread.sleep(Math.max(1, wait / 1000000));
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			time += Math.max(0, gc.getCollectionTime());
+		return time;
+	}
+
+	/**
+	 * Bytes allocated by the current thread, or -1 if the JVM cannot tell.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled())
+				return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Takes CASes from the pool until the end time, recording latencies after the warm up.
+	 */
+	private final class Worker extends Thread {
+		private final BlockingQueue<CAS> pool;
+		private final long measureStart;
+		private final long end;
+		long[] latencies = new long[1024];
+		int count;
+		long allocated = -1;
+		long extracted;
+		Exception failure;
+
+		Worker(BlockingQueue<CAS> pool, long measureStart, long end) {
+			this.pool = pool;
+			this.measureStart = measureStart;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long allocatedStart = -1;
+				long now;
+				boolean measuring = false;
+				while ((now = System.nanoTime()) < end) {
+					if (!measuring && now >= measureStart) {
+						measuring = true;
+						allocatedStart = allocatedBytes();
+					}
+					CAS cas = pool.take();
+					long begin = System.nanoTime();
+					int items;
+					try {
+						items = process(cas);
+					} finally {
+						pool.put(cas);
+					}
+					long latency = System.nanoTime() - begin;
+					if (measuring) {
+						if (count == latencies.length)
+							latencies = Arrays.copyOf(latencies, count * 2);
+						latencies[count++] = latency;
+						extracted += items;
+					}
+				}
+				if (allocatedStart != -1)
+					allocated = allocatedBytes() - allocatedStart;
+			} catch (Exception e) {
+				failure = e;
+			}
+		}
+	}
+}
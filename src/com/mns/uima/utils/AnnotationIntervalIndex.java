@@ -0,0 +1,268 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable index of extracted annotations by their offsets.
+ * <p>
+ * Answers which annotations are covered by a span, cover it, overlap it or are
+ * nearest to it, e.g. the entities in a sentence or the paragraph covering an
+ * entity, without a loop over every annotation. Annotations are held in UIMA
+ * index order, begin ascending then end descending, with their offsets copied
+ * into sorted int arrays. An implicit tree over the begin order holds the
+ * maximum end of each subtree so covering and overlapping queries only visit
+ * subtrees that can match.
+ * <p>
+ * Queries take O(log n) plus the number of candidates, which for covered-by is
+ * the number of annotations beginning in the span and otherwise the number of
+ * results. The index only references the PrimitiveAFS results so it can be used
+ * after the CAS has been released, and it can be shared between threads.
+ * Offsets are half open, an annotation covers the characters begin to end - 1.
+ *
+ * @param <T> the type of the annotations indexed
+ */
+public final class AnnotationIntervalIndex<T extends PrimitiveAFS> {
+	private static final Comparator<PrimitiveAFS> INDEX_ORDER = new Comparator<PrimitiveAFS>() {
+		@Override
+		public int compare(PrimitiveAFS a, PrimitiveAFS b) {
+			if (a.getBegin() != b.getBegin())
+				return a.getBegin() < b.getBegin() ? -1 : 1;
+			return a.getEnd() == b.getEnd() ? 0 : a.getEnd() > b.getEnd() ? -1 : 1;
+		}
+	};
+
+	private final List<T> annotations;
+	private final int[] begins;
+	private final int[] ends;
+	private final int leaves;
+	private final int[] maxEnds;
+	private final int[] byEnd;
+
+	/**
+	 * Build an index of annotations.
+	 * <p>
+	 * @param annotations extracted annotations, of any types, in any order.
+	 */
+	public AnnotationIntervalIndex(Collection<? extends T> annotations) {
+		@SuppressWarnings("unchecked")
+		T[] sorted = (T[]) annotations.toArray(new PrimitiveAFS[annotations.size()]);
+		Arrays.sort(sorted, INDEX_ORDER);
+		int n = sorted.length;
+		this.annotations = Collections.unmodifiableList(Arrays.asList(sorted));
+		this.begins = new int[n];
+		this.ends = new int[n];
+		for (int i = 0; i < n; i++) {
+			begins[i] = sorted[i].getBegin();
+			ends[i] = sorted[i].getEnd();
+		}
+
+		int size = 1;
+		while (size < n)
+			size <<= 1;
+		this.leaves = size;
+		this.maxEnds = new int[2 * size];
+		Arrays.fill(maxEnds, Integer.MIN_VALUE);
+		System.arraycopy(ends, 0, maxEnds, size, n);
+		for (int node = size - 1; node > 0; node--)
+			maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = (long) ends[i] << 32 | i;
+		Arrays.sort(keys);
+		this.byEnd = new int[n];
+		for (int i = 0; i < n; i++)
+			byEnd[i] = (int) keys[i];
+	}
+
+	/**
+	 * @return number of annotations indexed.
+	 */
+	public int size() {
+		return begins.length;
+	}
+
+	/**
+	 * @return the annotations in index order, begin ascending then end descending.
+	 */
+	public List<T> getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * Get the annotations within a span.
+	 * <p>
+	 * @param  begin start of the span
+	 * @param  end end of the span
+	 * @return annotations with begin &gt;= begin and end &lt;= end, in index order.
+	 */
+	public List<T> coveredBy(int begin, int end) {
+		List<T> result = new ArrayList<T>();
+		for (int i = lowerBound(begins, begin), last = upperBound(begins, end); i < last; i++) {
+			if (ends[i] <= end)
+				result.add(annotations.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @param  span e.g. a sentence
+	 * @return annotations within the span, including the span itself if it is indexed.
+	 */
+	public List<T> coveredBy(PrimitiveAFS span) {
+		return coveredBy(span.getBegin(), span.getEnd());
+	}
+
+	/**
+	 * Get the annotations covering a span.
+	 * <p>
+	 * @param  begin start of the span
+	 * @param  end end of the span
+	 * @return annotations with begin &lt;= begin and end &gt;= end, in index order.
+	 */
+	public List<T> covering(int begin, int end) {
+		List<T> result = new ArrayList<T>();
+		collect(1, 0, leaves, upperBound(begins, begin), end, result);
+		return result;
+	}
+
+	/**
+	 * @param  span e.g. an entity
+	 * @return annotations covering the span, including the span itself if it is indexed.
+	 */
+	public List<T> covering(PrimitiveAFS span) {
+		return covering(span.getBegin(), span.getEnd());
+	}
+
+	/**
+	 * Get the annotations overlapping a span.
+	 * <p>
+	 * @param  begin start of the span
+	 * @param  end end of the span
+	 * @return annotations with begin &lt; end and end &gt; begin, in index order.
+	 */
+	public List<T> overlapping(int begin, int end) {
+		List<T> result = new ArrayList<T>();
+		collect(1, 0, leaves, lowerBound(begins, end), begin + 1, result);
+		return result;
+	}
+
+	public List<T> overlapping(PrimitiveAFS span) {
+		return overlapping(span.getBegin(), span.getEnd());
+	}
+
+	/**
+	 * Get the annotation ending nearest before an offset.
+	 * <p>
+	 * @param  offset e.g. the begin of an entity
+	 * @return the annotation with the greatest end &lt;= offset, the shortest if
+	 *         several end there, or null if there is none.
+	 */
+	public T preceding(int offset) {
+		int i = upperBound(byEnd, offset, ends) - 1;
+		return i < 0 ? null : annotations.get(byEnd[i]);
+	}
+
+	/**
+	 * Get the annotation beginning nearest after an offset.
+	 * <p>
+	 * @param  offset e.g. the end of an entity
+	 * @return the annotation with the least begin &gt;= offset, the longest if
+	 *         several begin there, or null if there is none.
+	 */
+	public T following(int offset) {
+		int i = lowerBound(begins, offset);
+		return i < begins.length ? annotations.get(i) : null;
+	}
+
+	/**
+	 * Get the nearest annotation outside a span.
+	 * <p>
+	 * The nearer of {@link #preceding(int)} the begin and {@link #following(int)}
+	 * the end of the span, measured in characters between them and the span, the
+	 * preceding one if both are as near. Annotations overlapping the span are not
+	 * considered, see {@link #overlapping(int, int)}.
+	 * <p>
+	 * @param  begin start of the span
+	 * @param  end end of the span
+	 * @return the nearest annotation or null if there is none outside the span.
+	 */
+	public T nearest(int begin, int end) {
+		T before = preceding(begin);
+		T after = following(end);
+		if (before == null)
+			return after;
+		if (after == null)
+			return before;
+		return after.getBegin() - end < begin - before.getEnd() ? after : before;
+	}
+
+	public T nearest(PrimitiveAFS span) {
+		return nearest(span.getBegin(), span.getEnd());
+	}
+
+	/**
+	 * Add the annotations of a subtree with index below limit and end &gt;= minEnd.
+	 */
+	private void collect(int node, int lo, int hi, int limit, int minEnd, List<T> result) {
+		if (lo >= limit || maxEnds[node] < minEnd)
+			return;
+		if (hi - lo == 1) {
+			result.add(annotations.get(lo));
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		collect(2 * node, lo, mid, limit, minEnd, result);
+		collect(2 * node + 1, mid, hi, limit, minEnd, result);
+	}
+
+	/**
+	 * @return the first index with a value &gt;= key.
+	 */
+	private static int lowerBound(int[] values, int key) {
+		int lo = 0, hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the first index with a value &gt; key.
+	 */
+	private static int upperBound(int[] values, int key) {
+		int lo = 0, hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] <= key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the first position in a permutation whose value &gt; key.
+	 */
+	private static int upperBound(int[] permutation, int key, int[] values) {
+		int lo = 0, hi = permutation.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[permutation[mid]] <= key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,41 @@
+package com.mns.uima.utils;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Test applied to each annotation before it is extracted.
+ * <p>
+ * Set with {@link ExtractionOptions#setFilter(AnnotationPredicate)}, annotations
+ * that fail are skipped before any PrimitiveAFS is built, covered text read or
+ * feature value converted to a string. See {@link AnnotationPredicates} for
+ * predicates on spans and feature values. A predicate used by several threads
+ * must be thread safe.
+ */
+public interface AnnotationPredicate {
+	/**
+	 * @param  afs annotation about to be extracted
+	 * @return true to extract it, false to skip it.
+	 */
+	boolean test(AnnotationFS afs);
+
+	/**
+	 * @return a predicate passing annotations that pass this and the other predicate.
+	 */
+	default AnnotationPredicate and(AnnotationPredicate other) {
+		return afs -> test(afs) && other.test(afs);
+	}
+
+	/**
+	 * @return a predicate passing annotations that pass this or the other predicate.
+	 */
+	default AnnotationPredicate or(AnnotationPredicate other) {
+		return afs -> test(afs) || other.test(afs);
+	}
+
+	/**
+	 * @return a predicate passing annotations that fail this predicate.
+	 */
+	default AnnotationPredicate negate() {
+		return afs -> !test(afs);
+	}
+}
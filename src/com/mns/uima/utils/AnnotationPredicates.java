@@ -0,0 +1,189 @@
+package com.mns.uima.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Factories for common {@link AnnotationPredicate}s.
+ * <p>
+ * Feature predicates name a feature by base name and resolve it once per annotation
+ * type, keeping the handle of every type seen, then read the value with the
+ * typed getter for the feature's range: numeric features are compared as numbers
+ * without conversion to strings. An annotation whose type has no such feature, or
+ * a feature of another kind, fails the test. The predicates are thread safe.
+ */
+public final class AnnotationPredicates {
+	private AnnotationPredicates() {
+	}
+
+	/**
+	 * @param  length minimum number of characters
+	 * @return a predicate passing annotations with end - begin &gt;= length.
+	 */
+	public static AnnotationPredicate minLength(int length) {
+		return afs -> afs.getEnd() - afs.getBegin() >= length;
+	}
+
+	/**
+	 * @param  feature base name of a numeric feature, e.g. confidence
+	 * @param  min least value passed
+	 * @return a predicate passing annotations with the feature value &gt;= min.
+	 */
+	public static AnnotationPredicate atLeast(String feature, double min) {
+		FeatureHandle handle = new FeatureHandle(feature);
+		return afs -> {
+			Resolved resolved = handle.resolve(afs.getType());
+			return resolved.numeric && resolved.number(afs) >= min;
+		};
+	}
+
+	/**
+	 * @param  feature base name of a numeric feature
+	 * @param  max greatest value passed
+	 * @return a predicate passing annotations with the feature value &lt;= max.
+	 */
+	public static AnnotationPredicate atMost(String feature, double max) {
+		FeatureHandle handle = new FeatureHandle(feature);
+		return afs -> {
+			Resolved resolved = handle.resolve(afs.getType());
+			return resolved.numeric && resolved.number(afs) <= max;
+		};
+	}
+
+	/**
+	 * @param  feature base name of a string feature
+	 * @param  value the value passed
+	 * @return a predicate passing annotations with the feature equal to value.
+	 */
+	public static AnnotationPredicate equalTo(String feature, String value) {
+		FeatureHandle handle = new FeatureHandle(feature);
+		return afs -> {
+			Resolved resolved = handle.resolve(afs.getType());
+			return resolved.kind == PrimitiveAFSSchema.STRING && resolved.feature != null
+					&& value.equals(afs.getStringValue(resolved.feature));
+		};
+	}
+
+	/**
+	 * @param  feature base name of a string feature, e.g. a category
+	 * @param  values the values passed
+	 * @return a predicate passing annotations with the feature value in values.
+	 */
+	public static AnnotationPredicate in(String feature, Collection<String> values) {
+		FeatureHandle handle = new FeatureHandle(feature);
+		Set<String> set = new HashSet<String>(values);
+		return afs -> {
+			Resolved resolved = handle.resolve(afs.getType());
+			if (resolved.kind != PrimitiveAFSSchema.STRING || resolved.feature == null)
+				return false;
+			String value = afs.getStringValue(resolved.feature);
+			return value != null && set.contains(value);
+		};
+	}
+
+	/**
+	 * @param  feature base name of a boolean feature
+	 * @return a predicate passing annotations with the feature true.
+	 */
+	public static AnnotationPredicate isTrue(String feature) {
+		FeatureHandle handle = new FeatureHandle(feature);
+		return afs -> {
+			Resolved resolved = handle.resolve(afs.getType());
+			return resolved.kind == PrimitiveAFSSchema.BOOLEAN && afs.getBooleanValue(resolved.feature);
+		};
+	}
+
+	/**
+	 * @param  feature base name of a string or reference feature
+	 * @return a predicate passing annotations with a value for the feature.
+	 */
+	public static AnnotationPredicate notNull(String feature) {
+		FeatureHandle handle = new FeatureHandle(feature);
+		return afs -> {
+			Resolved resolved = handle.resolve(afs.getType());
+			if (resolved.feature == null)
+				return false;
+			if (resolved.reference)
+				return afs.getFeatureValue(resolved.feature) != null;
+			if (resolved.kind == PrimitiveAFSSchema.STRING)
+				return afs.getStringValue(resolved.feature) != null;
+			return true;
+		};
+	}
+
+	/**
+	 * A feature named by base name, resolved for each annotation type seen.
+	 * <p>
+	 * The types are held in a map that is copied on write, so threads reading
+	 * annotations of mixed types look handles up without locking or writing. A
+	 * predicate can outlive a type system, so the map starts over when it is full.
+	 */
+	private static final class FeatureHandle {
+		private static final int MAX_TYPES = 64;
+
+		private final String name;
+		private volatile Map<Type, Resolved> resolved = Collections.emptyMap();
+
+		FeatureHandle(String name) {
+			this.name = name;
+		}
+
+		Resolved resolve(Type type) {
+			Resolved handle = resolved.get(type);
+			if (handle == null) {
+				handle = new Resolved(type.getFeatureByBaseName(name));
+				synchronized (this) {
+					IdentityHashMap<Type, Resolved> types = resolved.size() < MAX_TYPES
+							? new IdentityHashMap<Type, Resolved>(resolved) : new IdentityHashMap<Type, Resolved>();
+					types.put(type, handle);
+					resolved = types;
+				}
+			}
+			return handle;
+		}
+	}
+
+	/**
+	 * A feature of one type and the kind of its range.
+	 */
+	private static final class Resolved {
+		final Feature feature;
+		final boolean reference;
+		final byte kind;
+		final boolean numeric;
+
+		Resolved(Feature feature) {
+			this.feature = feature;
+			this.reference = feature != null && !feature.getRange().isPrimitive();
+			this.kind = feature == null || reference ? -1 : PrimitiveAFSSchema.kindOf(feature.getRange());
+			this.numeric = kind > PrimitiveAFSSchema.BOOLEAN;
+		}
+
+		double number(AnnotationFS afs) {
+			switch (kind) {
+			case PrimitiveAFSSchema.BYTE:
+				return afs.getByteValue(feature);
+			case PrimitiveAFSSchema.SHORT:
+				return afs.getShortValue(feature);
+			case PrimitiveAFSSchema.INT:
+				return afs.getIntValue(feature);
+			case PrimitiveAFSSchema.LONG:
+				return afs.getLongValue(feature);
+			case PrimitiveAFSSchema.FLOAT:
+				return afs.getFloatValue(feature);
+			case PrimitiveAFSSchema.DOUBLE:
+				return afs.getDoubleValue(feature);
+			default:
+				throw new IllegalStateException("Feature " + feature.getName() + " is not numeric");
+			}
+		}
+	}
+}
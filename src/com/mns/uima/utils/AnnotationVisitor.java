@@ -0,0 +1,19 @@
+package com.mns.uima.utils;
+
+/**
+ * Receives annotations one at a time from the CASUtils visit methods.
+ * <p>
+ * Annotations are pushed in annotation index order as they are extracted, so no
+ * list of results is built. Returning false stops the extraction early.
+ *
+ * @param <T> AnnotationFS or PrimitiveAFS
+ */
+public interface AnnotationVisitor<T> {
+	/**
+	 * Called for each annotation extracted.
+	 * <p>
+	 * @param  annotation the annotation. A reused PrimitiveAFS is only valid until this method returns.
+	 * @return true to continue, false to stop the extraction.
+	 */
+	boolean visit(T annotation);
+}
@@ -0,0 +1,159 @@
+package com.mns.uima.utils;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * Walks a document in fixed size windows, extracting the annotations of a type in each.
+ * <p>
+ * Each call to {@link #next()} returns the annotations beginning in the next window,
+ * including those that extend past its end, so every annotation is returned once.
+ * The cursor keeps its place in the annotation index between windows, so the cost
+ * of a window is in proportion to the annotations in it. Windows continue to the end
+ * of the document text and on while annotations remain, and {@link #skipTo(int)}
+ * moves the cursor to another part of the document. The CAS must not change
+ * while the cursor is used. With a spill threshold set each window's list is a
+ * {@link SpillableAFSList}, which should be closed when done with.
+ * <pre>
+ * AnnotationWindowCursor windows = new AnnotationWindowCursor(jcas, type, features, options, 65536);
+ * while (windows.hasNext()) {
+ *   List&lt;PrimitiveAFS&gt; annotations = windows.next();
+ *   process(windows.getWindowBegin(), windows.getWindowEnd(), annotations);
+ * }
+ * </pre>
+ */
+public final class AnnotationWindowCursor implements Iterator<List<PrimitiveAFS>> {
+	private static final CASUtilsMetrics metrics = CASUtilsMetrics.get();
+
+	private final JCas jcas;
+	private final ExtractionOptions options;
+	private final String typeName;
+	private final int windowSize;
+	private final int documentLength;
+	private final ExtractionPlan plan;
+	private final ExtractionContext context;
+	private final FSIterator<Annotation> annotations;
+	private AnnotationFS probe; // moved by each skipTo, so skipping does not grow the heap
+	private int windowBegin;
+	private int windowEnd;
+	private int nextBegin;
+
+	/**
+	 * @param jcas
+	 * @param typeName Full type name to extract
+	 * @param featureNames List of feature base names to be extracted.
+	 * @param options Extraction options
+	 * @param windowSize number of characters in each window
+	 */
+	public AnnotationWindowCursor(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options, int windowSize) {
+		if (windowSize < 1)
+			throw new IllegalArgumentException("Invalid window size " + windowSize);
+		this.jcas = jcas;
+		this.options = options;
+		this.typeName = typeName;
+		this.windowSize = windowSize;
+		String text = jcas.getDocumentText();
+		this.documentLength = text == null ? 0 : text.length();
+		this.plan = ExtractionPlan.get(jcas.getTypeSystem(), typeName, featureNames);
+		if (plan == null) {
+			metrics.typeNotFound(typeName);
+			this.context = null;
+			this.annotations = null;
+		} else {
+			this.context = new ExtractionContext(jcas, options, false);
+			this.annotations = CASUtils.typeIterator(jcas, plan.getType());
+		}
+	}
+
+	/**
+	 * @return true while the document or its annotations have not all been walked.
+	 */
+	@Override
+	public boolean hasNext() {
+		return nextBegin < documentLength || (annotations != null && annotations.isValid());
+	}
+
+	/**
+	 * Extract the annotations beginning in the next window.
+	 * <p>
+	 * @return the annotations, empty if the type does not exist or the window has none.
+	 */
+	@Override
+	public List<PrimitiveAFS> next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		windowBegin = nextBegin;
+		windowEnd = windowBegin > Integer.MAX_VALUE - windowSize ? Integer.MAX_VALUE : windowBegin + windowSize;
+		nextBegin = windowEnd;
+		List<PrimitiveAFS> result = CASUtils.newList(jcas, options);
+		if (annotations == null)
+			return result;
+		try {
+			extract(result);
+		} catch (RuntimeException e) {
+			CASUtils.close(result, e);
+			throw e;
+		}
+		return result;
+	}
+
+	private void extract(List<PrimitiveAFS> result) {
+		long start = metrics.start();
+		ExtractionPlan.Layout layout = null;
+		long featureMisses = 0;
+		while (annotations.isValid()) {
+			AnnotationFS afs = annotations.get();
+			if (afs.getBegin() >= windowEnd)
+				break;
+			if (context.filter != null && !context.filter.test(afs)) {
+				annotations.moveToNext();
+				continue;
+			}
+			if (layout == null || layout.type != afs.getType())
+				layout = plan.layout(afs.getType());
+			featureMisses += layout.missing;
+			result.add(plan.extract(afs, layout, context));
+			annotations.moveToNext();
+		}
+		metrics.extraction(typeName, result.size(), start);
+		metrics.featureMisses(featureMisses);
+	}
+
+	/**
+	 * Continue with a window beginning at an offset, skipping or going back over part
+	 * of the document. The annotation index is entered with a seek.
+	 * <p>
+	 * @param begin start of the window the next call to {@link #next()} returns
+	 */
+	public void skipTo(int begin) {
+		if (begin < 0)
+			throw new IllegalArgumentException("Invalid window begin " + begin);
+		nextBegin = begin;
+		if (annotations == null)
+			return;
+		if (begin == 0)
+			annotations.moveToFirst();
+		else
+			probe = CASUtils.moveToBegin(jcas, annotations, begin, probe);
+	}
+
+	/**
+	 * @return start of the window last returned by {@link #next()}.
+	 */
+	public int getWindowBegin() {
+		return windowBegin;
+	}
+
+	/**
+	 * @return end of the window last returned by {@link #next()}, exclusive.
+	 */
+	public int getWindowEnd() {
+		return windowEnd;
+	}
+}
@@ -0,0 +1,53 @@
+package com.mns.uima.utils;
+
+import org.apache.uima.cas.ArrayFS;
+import org.apache.uima.cas.BooleanArrayFS;
+import org.apache.uima.cas.ByteArrayFS;
+import org.apache.uima.cas.DoubleArrayFS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.FloatArrayFS;
+import org.apache.uima.cas.IntArrayFS;
+import org.apache.uima.cas.LongArrayFS;
+import org.apache.uima.cas.ShortArrayFS;
+import org.apache.uima.cas.StringArrayFS;
+
+/**
+ * Copies the elements of an array feature structure out of the CAS.
+ */
+final class ArrayValues {
+	private ArrayValues() {
+	}
+
+	/**
+	 * Copy an array.
+	 * <p>
+	 * Primitive arrays are copied in bulk to a Java array of the element type,
+	 * FS arrays are read as a {@link SpanArray}.
+	 * <p>
+	 * @param  array the array feature structure, may be null
+	 * @param  documentText passed to {@link SpanArray} for lazy covered text, or null
+	 * @return int[], float[], String[], long[], double[], short[], byte[], boolean[],
+	 *         a SpanArray, or null if array is null or not an array.
+	 */
+	static Object copy(FeatureStructure array, String documentText) {
+		if (array instanceof IntArrayFS)
+			return ((IntArrayFS) array).toArray();
+		if (array instanceof FloatArrayFS)
+			return ((FloatArrayFS) array).toArray();
+		if (array instanceof StringArrayFS)
+			return ((StringArrayFS) array).toArray();
+		if (array instanceof ArrayFS)
+			return SpanArray.of((ArrayFS) array, documentText);
+		if (array instanceof LongArrayFS)
+			return ((LongArrayFS) array).toArray();
+		if (array instanceof DoubleArrayFS)
+			return ((DoubleArrayFS) array).toArray();
+		if (array instanceof ShortArrayFS)
+			return ((ShortArrayFS) array).toArray();
+		if (array instanceof ByteArrayFS)
+			return ((ByteArrayFS) array).toArray();
+		if (array instanceof BooleanArrayFS)
+			return ((BooleanArrayFS) array).toArray();
+		return null;
+	}
+}
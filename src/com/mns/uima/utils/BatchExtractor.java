@@ -0,0 +1,230 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Extracts the same spec from many CASes in parallel.
+ * <p>
+ * Each CAS is extracted by one task on an executor, by default the common fork join
+ * pool. Extraction plans are cached per type system, so every worker uses the same
+ * compiled plans once the first CAS of a type system has been seen. A CAS must not
+ * be changed while it is being extracted, and should not be in a batch twice.
+ * <p>
+ * {@link #extractAll(Collection)} returns results in input order,
+ * {@link #extract(Supplier, Consumer)} streams them in the order they complete
+ * with a bounded number of CASes in flight, so CASes can be read from disk or taken
+ * from a pool and released as their results are consumed. If either is interrupted,
+ * or the consumer throws, tasks not yet started are cancelled and the results not
+ * yet passed on are closed, including those of tasks still running when they finish.
+ * Results passed on should be closed by the caller when the options spill to a file.
+ */
+public final class BatchExtractor {
+	private final ExtractionSpec spec;
+	private final ExecutorService executor;
+	private final int maxInFlight;
+
+	/**
+	 * Create an extractor running on the common fork join pool.
+	 * <p>
+	 * @param spec what to extract from each CAS, copied.
+	 */
+	public BatchExtractor(ExtractionSpec spec) {
+		this(spec, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create an extractor running on an executor.
+	 * <p>
+	 * @param spec what to extract from each CAS, copied.
+	 * @param executor runs the extraction tasks, it is not shut down by the extractor.
+	 */
+	public BatchExtractor(ExtractionSpec spec, ExecutorService executor) {
+		this.spec = new ExtractionSpec(spec);
+		this.executor = executor;
+		int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+				: Runtime.getRuntime().availableProcessors();
+		this.maxInFlight = 2 * Math.max(1, parallelism);
+	}
+
+	/**
+	 * Extract from one CAS on the calling thread.
+	 * <p>
+	 * Runtime exceptions are returned in the result rather than thrown.
+	 * <p>
+	 * @param  index position of the CAS in the batch
+	 * @param  jcas
+	 * @return the result
+	 */
+	public ExtractionResult extract(int index, JCas jcas) {
+		Map<String, List<PrimitiveAFS>> annotations = new HashMap<String, List<PrimitiveAFS>>();
+		try {
+			// both forms apply every option, including the spill threshold
+			Map<String, List<String>> typeFeatures = spec.getTypeFeatures();
+			if (typeFeatures.size() == 1) { // the type's own index is quicker than one pass over all
+				Map.Entry<String, List<String>> type = typeFeatures.entrySet().iterator().next();
+				annotations.put(type.getKey(), CASUtils.extractPrimitiveAFSList(jcas, type.getKey(), type.getValue(), spec.getOptions()));
+			} else if (!typeFeatures.isEmpty()) {
+				annotations.putAll(CASUtils.extractPrimitiveAFSMap(jcas, typeFeatures, spec.getOptions()));
+			}
+			MetaFields metaFields = spec.isMetaFields() ? MetaFields.extract(jcas.getCas()) : null;
+			DocumentDetails documentDetails = spec.isDocumentDetails() ? DocumentDetails.extract(jcas) : null;
+			return new ExtractionResult(index, jcas, annotations, metaFields, documentDetails, null);
+		} catch (RuntimeException e) {
+			try {
+				ExtractionResult.close(annotations.values());
+			} catch (RuntimeException ce) {
+				e.addSuppressed(ce);
+			}
+			return new ExtractionResult(index, jcas, new HashMap<String, List<PrimitiveAFS>>(), null, null, e);
+		}
+	}
+
+	/**
+	 * Extract from every CAS of a collection in parallel.
+	 * <p>
+	 * @param  cases CASes to extract
+	 * @return results in the iteration order of the collection
+	 * @throws InterruptedException if interrupted while waiting, unfinished tasks are cancelled
+	 *         and every result is closed.
+	 */
+	public List<ExtractionResult> extractAll(Collection<? extends JCas> cases) throws InterruptedException {
+		Unclaimed unclaimed = new Unclaimed();
+		List<Future<ExtractionResult>> futures = new ArrayList<Future<ExtractionResult>>(cases.size());
+		List<ExtractionResult> results = new ArrayList<ExtractionResult>(cases.size());
+		boolean done = false;
+		try {
+			int index = 0;
+			for (JCas jcas : cases)
+				futures.add(executor.submit(task(index++, jcas, unclaimed)));
+			for (Future<ExtractionResult> future : futures)
+				results.add(unclaimed.claim(get(future)));
+			done = true;
+		} finally {
+			if (!done) {
+				for (Future<ExtractionResult> future : futures)
+					future.cancel(false);
+				unclaimed.abandon(results);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Extract from CASes as they are supplied, passing each result on as it completes.
+	 * <p>
+	 * The supplier and consumer are called on the calling thread, the supplier until
+	 * it returns null. At most twice the executor's parallelism CASes are in flight.
+	 * <p>
+	 * @param  cases supplies the next CAS or null when there are no more
+	 * @param  results receives each result, use {@link ExtractionResult#getIndex()} to restore input order
+	 * @return number of CASes extracted
+	 * @throws InterruptedException if interrupted while waiting, outstanding tasks are cancelled
+	 *         and their results closed.
+	 */
+	public int extract(Supplier<? extends JCas> cases, Consumer<? super ExtractionResult> results) throws InterruptedException {
+		CompletionService<ExtractionResult> completion = new ExecutorCompletionService<ExtractionResult>(executor);
+		Unclaimed unclaimed = new Unclaimed();
+		Set<Future<ExtractionResult>> inFlight = Collections.newSetFromMap(new IdentityHashMap<Future<ExtractionResult>, Boolean>());
+		int submitted = 0;
+		int completed = 0;
+		boolean more = true;
+		try {
+			while (more || completed < submitted) {
+				while (more && submitted - completed < maxInFlight) {
+					JCas jcas = cases.get();
+					if (jcas == null)
+						more = false;
+					else
+						inFlight.add(completion.submit(task(submitted++, jcas, unclaimed)));
+				}
+				if (completed < submitted) {
+					Future<ExtractionResult> future = completion.take();
+					inFlight.remove(future);
+					ExtractionResult result = unclaimed.claim(get(future));
+					completed++;
+					results.accept(result);
+				}
+			}
+		} finally {
+			if (!inFlight.isEmpty()) {
+				for (Future<ExtractionResult> future : inFlight)
+					future.cancel(false);
+				unclaimed.abandon(Collections.<ExtractionResult>emptyList());
+			}
+		}
+		return completed;
+	}
+
+	private Callable<ExtractionResult> task(int index, JCas jcas, Unclaimed unclaimed) {
+		return () -> unclaimed.completed(extract(index, jcas));
+	}
+
+	private static ExtractionResult get(Future<ExtractionResult> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// extract returns runtime exceptions in the result, so only errors get here
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Results of a batch finished but not yet passed to the caller.
+	 * <p>
+	 * If the caller gives up on the batch they are closed, and so are the results of
+	 * tasks that finish afterwards, so no spilled list is left open.
+	 */
+	private static final class Unclaimed {
+		private final Set<ExtractionResult> results = Collections.newSetFromMap(new IdentityHashMap<ExtractionResult, Boolean>());
+		private boolean abandoned;
+
+		synchronized ExtractionResult completed(ExtractionResult result) {
+			if (abandoned)
+				result.close();
+			else
+				results.add(result);
+			return result;
+		}
+
+		synchronized ExtractionResult claim(ExtractionResult result) {
+			results.remove(result);
+			return result;
+		}
+
+		/**
+		 * Close the unclaimed results, those finishing later, and the claimed results given.
+		 */
+		synchronized void abandon(List<ExtractionResult> claimed) {
+			abandoned = true;
+			results.addAll(claimed);
+			for (ExtractionResult result : results) {
+				try {
+					result.close();
+				} catch (RuntimeException e) {
+					// keep closing the others, the caller is already failing
+				}
+			}
+			results.clear();
+		}
+	}
+}
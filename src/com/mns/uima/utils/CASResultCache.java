@@ -0,0 +1,228 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Cache of extraction results for the life of a CAS, shared by the annotators of a pipeline.
+ * <p>
+ * When several annotators extract the same types, document details or meta fields
+ * from the same CAS, the first extraction is kept and the others return it. Results
+ * are held per CAS view and keyed by the type, features and options extracted.
+ * <p>
+ * Results are kept until {@link #release(CAS)} is called for the CAS, which the
+ * pipeline must do when it is done with each CAS, e.g. in its last annotator or
+ * where the CAS is returned to a pool, and which an annotator must do after adding
+ * annotations to, removing them from or changing them in a view whose results may
+ * be cached. The cache does not watch the CAS for these changes, other than
+ * dropping the results of a view whose document text is set again.
+ * <p>
+ * Cached lists are unmodifiable and the PrimitiveAFS in them are shared by every
+ * caller, so must not be changed. A list that spilled to a file, see
+ * {@link ExtractionOptions#setSpillThreshold(int)}, is not cached but returned to
+ * the caller, who must close it. Views are held weakly, so a CAS that is dropped
+ * without being released does not stay in memory. A cache can be used from any
+ * thread, a CAS is only expected to be processed by one at a time.
+ */
+public final class CASResultCache {
+	private static final CASResultCache instance = new CASResultCache();
+
+	private final WeakHashMap<CAS, Entry> entries = new WeakHashMap<CAS, Entry>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @return the cache shared by all annotators in the process.
+	 */
+	public static CASResultCache get() {
+		return instance;
+	}
+
+	/**
+	 * Extract a list of primitive annotation feature structures, or return the list
+	 * already extracted from the CAS with the same type, features and options.
+	 * <p>
+	 * See {@link CASUtils#extractPrimitiveAFSList(JCas, String, List, ExtractionOptions)}.
+	 * <p>
+	 * @param  jcas
+	 * @param  typeName Full type name to extract
+	 * @param  featureNames List of feature base names to be extracted.
+	 * @param  options Extraction options, matched by identity so share one instance.
+	 * @return unmodifiable list of PrimitiveAFS, or a spilled {@link SpillableAFSList} to close.
+	 */
+	public List<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options) {
+		Entry entry = entry(jcas.getCas());
+		ResultKey key = new ResultKey(typeName, featureNames, options);
+		synchronized (entry) {
+			List<PrimitiveAFS> list = entry.lists.get(key);
+			if (list != null) {
+				hits.increment();
+				return list;
+			}
+		}
+		misses.increment();
+		List<PrimitiveAFS> list = CASUtils.extractPrimitiveAFSList(jcas, typeName, featureNames, options);
+		if (list instanceof SpillableAFSList && ((SpillableAFSList) list).isSpilled())
+			return list; // holds a file, so owned by the caller
+		list = Collections.unmodifiableList(list);
+		synchronized (entry) {
+			entry.lists.put(key, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Extract document details, or return those already extracted from the CAS.
+	 * <p>
+	 * See {@link DocumentDetails#extract(JCas)}.
+	 * <p>
+	 * @param  jcas
+	 * @return the document details
+	 */
+	public DocumentDetails extractDocumentDetails(JCas jcas) {
+		Entry entry = entry(jcas.getCas());
+		synchronized (entry) {
+			if (entry.documentDetails != null) {
+				hits.increment();
+				return entry.documentDetails;
+			}
+		}
+		misses.increment();
+		DocumentDetails details = DocumentDetails.extract(jcas);
+		synchronized (entry) {
+			entry.documentDetails = details;
+		}
+		return details;
+	}
+
+	/**
+	 * Extract meta fields, or return those already extracted from the CAS.
+	 * <p>
+	 * See {@link MetaFields#extract(CAS)}.
+	 * <p>
+	 * @param  cas
+	 * @return the meta fields
+	 */
+	public MetaFields extractMetaFields(CAS cas) {
+		Entry entry = entry(cas);
+		synchronized (entry) {
+			if (entry.metaFields != null) {
+				hits.increment();
+				return entry.metaFields;
+			}
+		}
+		misses.increment();
+		MetaFields metaFields = MetaFields.extract(cas);
+		synchronized (entry) {
+			entry.metaFields = metaFields;
+		}
+		return metaFields;
+	}
+
+	/**
+	 * Drop everything cached for a CAS, in all its views.
+	 * <p>
+	 * Call when done with the CAS, before it is reset or returned to a pool, and after
+	 * changing the annotations of a view whose results may be cached.
+	 * <p>
+	 * @param cas the CAS or any of its views
+	 */
+	public void release(CAS cas) {
+		synchronized (entries) {
+			entries.remove(cas);
+			for (Iterator<CAS> views = cas.getViewIterator(); views.hasNext();)
+				entries.remove(views.next());
+		}
+	}
+
+	/**
+	 * Drop everything cached.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return number of extractions answered from the cache.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of extractions done.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Get the entry for a view, emptied if its document text has been set since it was filled.
+	 */
+	private Entry entry(CAS cas) {
+		String documentText = cas.getDocumentText();
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(cas);
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(cas, entry);
+			}
+		}
+		synchronized (entry) {
+			if (entry.documentText != documentText) {
+				entry.lists.clear();
+				entry.documentDetails = null;
+				entry.metaFields = null;
+				entry.documentText = documentText;
+			}
+		}
+		return entry;
+	}
+
+	private static final class Entry {
+		String documentText;
+		final HashMap<ResultKey, List<PrimitiveAFS>> lists = new HashMap<ResultKey, List<PrimitiveAFS>>();
+		DocumentDetails documentDetails;
+		MetaFields metaFields;
+	}
+
+	private static final class ResultKey {
+		final String typeName;
+		final List<String> featureNames;
+		final ExtractionOptions options;
+		final int hash;
+
+		ResultKey(String typeName, List<String> featureNames, ExtractionOptions options) {
+			this.typeName = typeName;
+			this.featureNames = new ArrayList<String>(featureNames);
+			this.options = options;
+			this.hash = 31 * (31 * typeName.hashCode() + this.featureNames.hashCode()) + System.identityHashCode(options);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof ResultKey))
+				return false;
+			ResultKey other = (ResultKey) o;
+			return options == other.options && typeName.equals(other.typeName) && featureNames.equals(other.featureNames);
+		}
+	}
+}
@@ -1,17 +1,19 @@
 package com.mns.uima.utils;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.function.Supplier;
 
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.annotator.AnnotatorInitializationException;
 import org.apache.uima.cas.ArrayFS;
 import org.apache.uima.cas.CAS;
-import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.CASRuntimeException;
 import org.apache.uima.cas.ConstraintFactory;
 import org.apache.uima.cas.FSIterator;
@@ -24,7 +26,6 @@ import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.cas.text.AnnotationIndex;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.JFSIndexRepository;
-import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
@@ -37,12 +38,15 @@ import org.apache.uima.util.Logger;
  * @version     2.1.0 $Revision: 168 $            
  */
 public final class CASUtils {
-	private static final String SENTENCETYPE = "uima.tt.SentenceAnnotation";
-	private static final String PARAGRAPHTYPE = "uima.tt.ParagraphAnnotation";
-	private static final String LEMMATYPE = "uima.tt.Lemma";
-	private static final String LEMMAKEY = "key";
+	static final String SENTENCETYPE = "uima.tt.SentenceAnnotation";
+	static final String PARAGRAPHTYPE = "uima.tt.ParagraphAnnotation";
+	static final String LEMMATYPE = "uima.tt.Lemma";
+	static final String LEMMAKEY = "key";
 	
+	private static final ExtractionOptions DEFAULT_OPTIONS = new ExtractionOptions();
+
 	private static final Logger logger = UIMAFramework.getLogger(CASUtils.class);
+	private static final CASUtilsMetrics metrics = CASUtilsMetrics.get();
 	/**
 	 * Get a type object corresponding to a name.
 	 * <p>
@@ -83,6 +87,63 @@ public final class CASUtils {
 		return feat;
 	}
 
+	/**
+	 * Get an iterator over the annotations of a type and its subtypes.
+	 * <p>
+	 * The type's own annotation index is used rather than filtering the full
+	 * annotation index, so the cost depends on the number of matching annotations
+	 * and not on the size of the CAS. The ordering is the same as the full index.
+	 * Types that are not annotation types (e.g. a supertype of annotation) fall
+	 * back to filtering the full annotation index.
+	 *
+	 * @param  jcas 
+	 * @param  type Type to iterate, must be from the jcas type system
+	 * @return Iterator over annotations of the type
+	 */	
+	static final FSIterator<Annotation> typeIterator(JCas jcas, Type type) {
+		CAS cas = jcas.getCas();
+		if (cas.getTypeSystem().subsumes(cas.getAnnotationType(), type))
+			return jcas.getAnnotationIndex(type).iterator();
+
+		JFSIndexRepository indexRepository = jcas.getJFSIndexRepository();
+		AnnotationIndex<Annotation> index = indexRepository.getAnnotationIndex();
+
+		ConstraintFactory cf = jcas.getConstraintFactory();
+		FSTypeConstraint filter = cf.createTypeConstraint();
+
+		filter.add(type);
+
+		return jcas.createFilteredIterator(index.iterator(), filter);
+	}
+
+	/**
+	 * Move an annotation iterator to the first annotation beginning at or after an offset.
+	 * <p>
+	 * Uses an unindexed probe annotation that sorts before every annotation with that 
+	 * begin, so the index is entered with a seek rather than a scan. A caller seeking
+	 * repeatedly passes back the probe returned by its last seek to have it moved rather
+	 * than creating another.
+	 * <p>
+	 * @param  probe probe returned by an earlier seek in the same view, or null
+	 * @return the probe, for the caller's next seek.
+	 */
+	static final AnnotationFS moveToBegin(JCas jcas, FSIterator<Annotation> it, int begin, AnnotationFS probe) {
+		CAS cas = jcas.getCas();
+		if (probe == null)
+			probe = cas.createAnnotation(cas.getAnnotationType(), begin, Integer.MAX_VALUE);
+		else
+			probe.setIntValue(cas.getBeginFeature(), begin);
+		try {
+			it.moveTo(probe);
+		} catch (NoSuchElementException e) {
+			// a filtered iterator throws rather than becoming invalid when nothing follows
+			it.moveToLast();
+			if (it.isValid())
+				it.moveToNext();
+		}
+		return probe;
+	}
+
 	/**
 	 * Extract a list of annotation feature structures for a given type name.
 	 * <p>
@@ -93,33 +154,46 @@ public final class CASUtils {
 	 */	
 	public static final ArrayList<AnnotationFS> extractAFSList(JCas jcas, String typeName) {
 		ArrayList<AnnotationFS> annotations = new ArrayList<AnnotationFS>();
+		visitAFS(jcas, typeName, annotations::add);
+		return annotations;
+	}
+
+	/**
+	 * Push the annotation feature structures for a given type name to a visitor.
+	 * <p>
+	 * Streaming form of {@link #extractAFSList(JCas, String)}, annotations are 
+	 * passed to the visitor in the same order without building a list.
+	 *
+	 * @param  jcas 
+	 * @param  typeName Full type name to extract
+	 * @param  visitor receives each annotation, returns false to stop
+	 * @return number of annotations visited
+	 */	
+	public static final int visitAFS(JCas jcas, String typeName, AnnotationVisitor<? super AnnotationFS> visitor) {
+		int count = 0;
+		long start = metrics.start();
 		try {
 			TypeSystem typeSystem = jcas.getTypeSystem();
 			Type type = typeSystem.getType(typeName);
 
 			if (type!=null) {
 
-				JFSIndexRepository indexRepository = jcas.getJFSIndexRepository();
-				AnnotationIndex<Annotation> index = indexRepository.getAnnotationIndex();
-
-				ConstraintFactory cf = jcas.getConstraintFactory();
-				FSTypeConstraint filter = cf.createTypeConstraint();
-
-				filter.add(type);
-
-				FSIterator<Annotation> list = jcas.createFilteredIterator(index.iterator(), filter);
+				FSIterator<Annotation> list = typeIterator(jcas, type);
 				while (list.hasNext()) {
 					AnnotationFS afs = (AnnotationFS)list.next();
-					annotations.add(afs);
+					count++;
+					if (!visitor.visit(afs))
+						break;
 				}
+				metrics.extraction(typeName, count, start);
 			} else {
-				logger.log(Level.INFO, "Type " + typeName + " not found in typesystem");
+				metrics.typeNotFound(typeName);
 			}
 		}
 		catch (CASRuntimeException e) {
 			logger.log(Level.WARNING,e.toString(),e);
 		}
-		return annotations;
+		return count;
 	}
 
 	/**
@@ -146,70 +220,201 @@ public final class CASUtils {
 	 */	
 	public static final ArrayList<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, String typeName, ArrayList<String> featureNames) {
 		ArrayList<PrimitiveAFS> annotations = new ArrayList<PrimitiveAFS>();
+		visitPrimitiveAFS(jcas, typeName, featureNames, DEFAULT_OPTIONS, false, annotations::add);
+		return annotations;
+	}
+
+	/**
+	 * Extract a list of primitive annotation feature structures for a given type name.
+	 * <p>
+	 * As {@link #extractPrimitiveAFSList(JCas, String, ArrayList)} with options 
+	 * controlling how the results are built, e.g. as CompactPrimitiveAFS.
+	 * <p>
+	 * The text of a sentence or paragraph is read once per call, annotations
+	 * in the same sentence share one string.
+	 * <p>
+	 * With a spill threshold set the list is a {@link SpillableAFSList}, which
+	 * should be closed when done with.
+	 * <p>
+	 * @param  jcas 
+	 * @param  typeName Full type name to extract
+	 * @param  featureNames List of feature base names to be extracted.
+	 * @param  options Extraction options
+	 * @return List of PrimitiveAFS
+	 */	
+	public static final List<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options) {
+		return extractPrimitiveAFSList(jcas, typeName, featureNames, options, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Push primitive annotation feature structures for a given type name to a visitor.
+	 * <p>
+	 * Streaming form of {@link #extractPrimitiveAFSList(JCas, String, List, ExtractionOptions)}, 
+	 * each annotation is extracted and passed to the visitor in turn so memory use 
+	 * does not grow with the number of annotations. With 
+	 * {@link ExtractionOptions#setReuseResults(boolean)} one PrimitiveAFS per 
+	 * annotation type is refilled for each annotation and is only valid during 
+	 * the visit call.
+	 * <p>
+	 * @param  jcas 
+	 * @param  typeName Full type name to extract
+	 * @param  featureNames List of feature base names to be extracted.
+	 * @param  options Extraction options
+	 * @param  visitor receives each annotation, returns false to stop
+	 * @return number of annotations visited
+	 */	
+	public static final int visitPrimitiveAFS(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options, AnnotationVisitor<? super PrimitiveAFS> visitor) {
+		return visitPrimitiveAFS(jcas, typeName, featureNames, options, options.isReuseResults(), visitor);
+	}
+
+	/**
+	 * Extract a list of primitive annotation feature structures beginning in a window of the document.
+	 * <p>
+	 * As {@link #extractPrimitiveAFSList(JCas, String, List, ExtractionOptions)} for the 
+	 * annotations with begin &gt;= begin and &lt; end, including those that extend past the 
+	 * end of the window, so windows side by side extract each annotation once. The index 
+	 * is entered at the window begin rather than read from the start of the document. 
+	 * To walk a whole document in windows see {@link AnnotationWindowCursor}.
+	 * <p>
+	 * With a spill threshold set the list is a {@link SpillableAFSList}, which
+	 * should be closed when done with.
+	 * <p>
+	 * @param  jcas 
+	 * @param  typeName Full type name to extract
+	 * @param  featureNames List of feature base names to be extracted.
+	 * @param  options Extraction options
+	 * @param  begin start of the window
+	 * @param  end end of the window, exclusive
+	 * @return List of PrimitiveAFS
+	 */	
+	public static final List<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options, int begin, int end) {
+		List<PrimitiveAFS> annotations = newList(jcas, options);
 		try {
-			TypeSystem typeSystem = jcas.getTypeSystem();
-			Type type = typeSystem.getType(typeName);
+			visitPrimitiveAFS(jcas, typeName, featureNames, options, false, begin, end, annotations::add);
+		} catch (RuntimeException e) {
+			close(annotations, e);
+			throw e;
+		}
+		return annotations;
+	}
+
+	/**
+	 * Create the list extracted annotations are added to, spillable if the options have a spill threshold.
+	 */
+	static final List<PrimitiveAFS> newList(JCas jcas, ExtractionOptions options) {
+		if (options.getSpillThreshold() > 0)
+			return new SpillableAFSList(options.getSpillThreshold(), jcas.getDocumentText());
+		return new ArrayList<PrimitiveAFS>();
+	}
+
+	/**
+	 * Close a list if it is a SpillableAFSList, adding any failure to the one being thrown.
+	 */
+	static final void close(List<PrimitiveAFS> annotations, RuntimeException e) {
+		if (annotations instanceof SpillableAFSList) {
+			try {
+				((SpillableAFSList) annotations).close();
+			} catch (IOException ce) {
+				e.addSuppressed(ce);
+			}
+		}
+	}
 
-			if (type!=null ) {
+	/**
+	 * Push primitive annotation feature structures beginning in a window of the document to a visitor.
+	 * <p>
+	 * Streaming form of {@link #extractPrimitiveAFSList(JCas, String, List, ExtractionOptions, int, int)},
+	 * see {@link #visitPrimitiveAFS(JCas, String, List, ExtractionOptions, AnnotationVisitor)}.
+	 * <p>
+	 * @param  jcas 
+	 * @param  typeName Full type name to extract
+	 * @param  featureNames List of feature base names to be extracted.
+	 * @param  options Extraction options
+	 * @param  begin start of the window
+	 * @param  end end of the window, exclusive
+	 * @param  visitor receives each annotation, returns false to stop
+	 * @return number of annotations visited
+	 */	
+	public static final int visitPrimitiveAFS(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options, int begin, int end, AnnotationVisitor<? super PrimitiveAFS> visitor) {
+		return visitPrimitiveAFS(jcas, typeName, featureNames, options, options.isReuseResults(), begin, end, visitor);
+	}
 
-				JFSIndexRepository indexRepository = jcas.getJFSIndexRepository();
-				AnnotationIndex<Annotation> index = indexRepository.getAnnotationIndex();
+	/**
+	 * Push primitive annotation feature structures for a given type name to a visitor.
+	 * <p>
+	 * Streaming form of {@link #extractPrimitiveAFSList(JCas, String, boolean)}, 
+	 * see {@link #visitPrimitiveAFS(JCas, String, List, ExtractionOptions, AnnotationVisitor)}.
+	 * <p>
+	 * @param  jcas 
+	 * @param  typeName Full type name to extract
+	 * @param  getFeatures If true all features are extracted, if false only the mandatory.
+	 * @param  options Extraction options
+	 * @param  visitor receives each annotation, returns false to stop
+	 * @return number of annotations visited
+	 */	
+	public static final int visitPrimitiveAFS(JCas jcas, String typeName, boolean getFeatures, ExtractionOptions options, AnnotationVisitor<? super PrimitiveAFS> visitor) {
+		Type type = jcas.getTypeSystem().getType(typeName);
+		if (type == null) {
+			metrics.typeNotFound(typeName);
+			return 0;
+		}
+		return visitPrimitiveAFS(jcas, typeName, featureNames(type, getFeatures), options, visitor);
+	}
 
-				ConstraintFactory cf = jcas.getConstraintFactory();
-				FSTypeConstraint filter = cf.createTypeConstraint();
+	private static final int visitPrimitiveAFS(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options, boolean reuseResults, AnnotationVisitor<? super PrimitiveAFS> visitor) {
+		return visitPrimitiveAFS(jcas, typeName, featureNames, options, reuseResults, 0, Integer.MAX_VALUE, visitor);
+	}
 
-				filter.add(type);
+	private static final int visitPrimitiveAFS(JCas jcas, String typeName, List<String> featureNames, ExtractionOptions options, boolean reuseResults, 
+			int begin, int end, AnnotationVisitor<? super PrimitiveAFS> visitor) {
+		int count = 0;
+		long start = metrics.start();
+		try {
+			ExtractionPlan plan = ExtractionPlan.get(jcas.getTypeSystem(), typeName, featureNames);
 
-				FSIterator<Annotation> list = jcas.createFilteredIterator(index.iterator(), filter);
+			if (plan!=null ) {
+
+				ExtractionContext context = new ExtractionContext(jcas, options, reuseResults);
+				FSIterator<Annotation> list = typeIterator(jcas, plan.getType());
+				if (begin > 0)
+					moveToBegin(jcas, list, begin, null);
+				ExtractionPlan.Layout layout = null;
+				long featureMisses = 0;
 				while (list.hasNext()) {
 					AnnotationFS afs = (AnnotationFS)list.next();
-					PrimitiveAFS pafs = new PrimitiveAFS();
-					pafs.setBegin(afs.getBegin());
-					pafs.setEnd(afs.getEnd());
-					pafs.setCoveredText(afs.getCoveredText());
-					pafs.setTypeStr(typeName);
-					HashMap<String, String> features = new HashMap<String, String>();
-					for (String ftName : featureNames) {
-						try {
-							Feature ft = afs.getType().getFeatureByBaseName(ftName);
-							if (ft.getRange().isPrimitive()) {
-								String str = afs.getFeatureValueAsString(ft);
-								features.put(ftName, str);
-							} else if (ft.getRange().isArray()) { // try the covered text on the first element 
-								FeatureStructure fs = ((ArrayFS) afs.getFeatureValue(ft)).get(0);
-								if (fs != null) {
-									if (fs.getType().getFeatureByBaseName("begin") != null) // it's an annotation
-										features.put(ftName, ((AnnotationFS) fs).getCoveredText());
-									else
-										features.put(ftName, "");
-								}		
-							} else {
-								FeatureStructure fs = afs.getFeatureValue(ft);
-								String name = fs.getType().getName();
-								if (name.equals(SENTENCETYPE) || name.equals(PARAGRAPHTYPE))
-									features.put(ftName, ((AnnotationFS) fs).getCoveredText());
-								else if ( name.equals(LEMMATYPE)) {
-									Type lemmaFSType = fs.getType();
-									Feature lemmaKey = lemmaFSType.getFeatureByBaseName(LEMMAKEY);
-									if (lemmaKey != null) features.put(ftName, fs.getStringValue(lemmaKey));
-								}
-							}
-						}
-						catch (Exception e) {
-							features.put(ftName, "");
-						}
-					}
-					pafs.setFeatures(features);
-					annotations.add(pafs);
+					if (afs.getBegin() >= end)
+						break;
+					if (context.filter != null && !context.filter.test(afs))
+						continue;
+					if (layout == null || layout.type != afs.getType())
+						layout = plan.layout(afs.getType());
+					count++;
+					featureMisses += layout.missing;
+					if (!visitor.visit(plan.extract(afs, layout, context)))
+						break;
 				}
+				metrics.extraction(typeName, count, start);
+				metrics.featureMisses(featureMisses);
 			} else {
-				logger.log(Level.INFO, "Type " + typeName + " not found in typesystem");
+				metrics.typeNotFound(typeName);
 			}
 	}
 	catch (CASRuntimeException e) {
 		logger.log(Level.WARNING,e.toString(),e);
 	}
-	return annotations;
+	return count;
+}
+
+private static final ArrayList<String> featureNames(Type type, boolean getFeatures) {
+	ArrayList<String> featureNames = new ArrayList<String>();
+
+	if (getFeatures) {
+		List<Feature> feats = type.getFeatures();
+		for (Feature ft : feats){
+			featureNames.add(ft.getShortName());
+		}
+	} 
+	return featureNames;
 }
 
 /**
@@ -244,20 +449,110 @@ public static final ArrayList<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, S
 
 	if (type!=null) {
 
-		ArrayList<String> featureNames = new ArrayList<String>();
+		annotations = extractPrimitiveAFSList(jcas, typeName, featureNames(type, getFeatures));
+	} else {
+		metrics.typeNotFound(typeName);
+	}
+	return annotations;
+}
+
+/**
+ * Extract lists of primitive annotation feature structures for several types in one pass.
+ * <p>
+ * The annotation index is walked once and each annotation is added to the result 
+ * of every requested type that subsumes it, so a subtype annotation is returned for
+ * both itself and its requested supertypes. Each list is in annotation index order 
+ * and holds the same values as {@link #extractPrimitiveAFSList(JCas, String, ArrayList)}
+ * would return for that type.
+ * <p>
+ * @param  jcas 
+ * @param  typeFeatures Full type names to extract mapped to the feature base names to be extracted.
+ * @return Map of type name to list of PrimitiveAFS, types not in the typesystem have an empty list.
+ */	
+public static final HashMap<String, ArrayList<PrimitiveAFS>> extractPrimitiveAFSMap(JCas jcas, Map<String, ? extends List<String>> typeFeatures) {
+	return extractPrimitiveAFSMap(jcas, typeFeatures, DEFAULT_OPTIONS, () -> new ArrayList<PrimitiveAFS>());
+}
+
+/**
+ * Extract lists of primitive annotation feature structures for several types in one pass.
+ * <p>
+ * As {@link #extractPrimitiveAFSMap(JCas, Map)} with options controlling how the
+ * results are built. With a spill threshold set each list is a {@link SpillableAFSList},
+ * which should be closed when done with.
+ * <p>
+ * @param  jcas 
+ * @param  typeFeatures Full type names to extract mapped to the feature base names to be extracted.
+ * @param  options Extraction options
+ * @return Map of type name to list of PrimitiveAFS, types not in the typesystem have an empty list.
+ */	
+public static final HashMap<String, List<PrimitiveAFS>> extractPrimitiveAFSMap(JCas jcas, Map<String, ? extends List<String>> typeFeatures, ExtractionOptions options) {
+	return extractPrimitiveAFSMap(jcas, typeFeatures, options, () -> newList(jcas, options));
+}
 
-		if (getFeatures) {
-			List<Feature> feats = type.getFeatures();
-			for (Feature ft : feats){
-				featureNames.add(ft.getShortName());
+private static final <L extends List<PrimitiveAFS>> HashMap<String, L> extractPrimitiveAFSMap(JCas jcas, Map<String, ? extends List<String>> typeFeatures, 
+		ExtractionOptions options, Supplier<L> newList) {
+	HashMap<String, L> results = new HashMap<String, L>();
+	for (String typeName : typeFeatures.keySet())
+		results.put(typeName, newList.get());
+	long start = metrics.start();
+	try {
+		MultiExtractionPlan plan = MultiExtractionPlan.get(jcas.getTypeSystem(), typeFeatures);
+		for (String typeName : plan.getMissingTypeNames())
+			metrics.typeNotFound(typeName);
+
+		ExtractionPlan[] plans = plan.getPlans();
+		if (plans.length > 0) {
+			List<L> lists = new ArrayList<L>(plans.length);
+			for (ExtractionPlan p : plans)
+				lists.add(results.get(p.getTypeName()));
+
+			ExtractionContext context = new ExtractionContext(jcas, options, false);
+			FSIterator<Annotation> list = jcas.getAnnotationIndex().iterator();
+			Type lastType = null;
+			MultiExtractionPlan.Target[] targets = null;
+			while (list.hasNext()) {
+				AnnotationFS afs = list.next();
+				if (afs.getType() != lastType) {
+					lastType = afs.getType();
+					targets = plan.targets(lastType);
+				}
+				if (targets.length == 0 || (context.filter != null && !context.filter.test(afs)))
+					continue;
+				for (MultiExtractionPlan.Target target : targets)
+					lists.get(target.plan).add(plans[target.plan].extract(afs, target.layout, context));
 			}
-		} 
 
-		annotations = extractPrimitiveAFSList(jcas, typeName, featureNames);
-	} else {
-		logger.log(Level.INFO, "Type " + typeName + " not found in typesystem");
+			String[] typeNames = new String[plans.length];
+			int[] counts = new int[plans.length];
+			for (int i = 0; i < plans.length; i++) {
+				typeNames[i] = plans[i].getTypeName();
+				counts[i] = lists.get(i).size();
+			}
+			metrics.extraction(typeNames, counts, start);
+		}
 	}
-	return annotations;
+	catch (CASRuntimeException e) {
+		logger.log(Level.WARNING,e.toString(),e);
+	}
+	catch (RuntimeException e) {
+		for (L annotations : results.values())
+			close(annotations, e);
+		throw e;
+	}
+	return results;
+}
+
+/**
+ * Copy out the covered text of lazily extracted annotations and of their FS array elements.
+ * <p>
+ * After this the annotations no longer reference the document text, so they can
+ * be kept after the CAS is reset without keeping the whole document. 
+ * <p>
+ * @param  annotations extracted annotations
+ */	
+public static final void detach(List<? extends PrimitiveAFS> annotations) {
+	for (PrimitiveAFS pafs : annotations)
+		pafs.detach();
 }
 
 /**
@@ -268,6 +563,8 @@ public static final ArrayList<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, S
  * <ul>
  * <li>Sentence or Paragraph - the text of the sentence or pragraph</li>
  * <li>lemma - the string value of the lemma key</li>
+ * <li>A FSArray - the covered text of the first element, for all elements 
+ * see {@link #extractArrayFeature(FeatureStructure, String)}</li>
  * <ul>
  * <br>
  * <p>
@@ -276,16 +573,22 @@ public static final ArrayList<PrimitiveAFS> extractPrimitiveAFSList(JCas jcas, S
  * @return  string value of feature or null.
  */
 public static final String extractPrimitiveFeatureAsString(AnnotationFS afs, String feature){
-	Feature ft = null;
 	String ret = null;
 	Type type = afs.getType();
 
+	Feature ft = FeatureLookup.get(afs.getCAS().getTypeSystem(), type, feature);
+	if (ft == null) {
+		metrics.featureNotFound(type, feature);
+		return null;
+	}
 	try {
-		ft = initFeature(type, feature);
 		if (ft.getRange().isPrimitive()) {
 			ret = afs.getFeatureValueAsString(ft);
 		} else if (ft.getRange().isArray()) { // try the covered text on the first element 
-			FeatureStructure fs = ((ArrayFS) afs.getFeatureValue(ft)).get(0);
+			FeatureStructure array = afs.getFeatureValue(ft);
+			if (!(array instanceof ArrayFS)) // primitive arrays, see extractArrayFeature
+				return null;
+			FeatureStructure fs = ((ArrayFS) array).get(0);
 			if (fs != null) {
 				if (fs.getType().getFeatureByBaseName("begin") != null) // it's an annotation
 					ret = ((AnnotationFS) fs).getCoveredText();
@@ -301,24 +604,43 @@ public static final String extractPrimitiveFeatureAsString(AnnotationFS afs, Str
 				if (lemmaKey != null) ret = fs.getStringValue(lemmaKey);
 			}
 		}
-		
-		
-		
-		
-	} catch (AnnotatorInitializationException e) {
-		logger.log(Level.INFO,"Failed to find feature for extract. " + e.toString(),e);
-	}
-	catch (CASRuntimeException e) {
+	} catch (CASRuntimeException e) {
 		logger.log(Level.INFO,"Failed to get feature value for feature: " + ft.getName() + " " + e.toString(),e);
 	}
 	return ret;
 }
 
+/**
+ * Extracts all the elements of an array feature from a feature structure.
+ * <p>
+ * Primitive arrays are copied in bulk into a Java array of the element type 
+ * without boxing, an FSArray is returned as a SpanArray holding the offsets 
+ * and covered text of its elements.
+ * <p>
+ * @param fs	feature structure to extract feature from
+ * @param feature  short name of feature to extract.
+ * @return  int[], float[], String[], long[], double[], short[], byte[], boolean[],
+ *          SpanArray, or null if the feature does not exist, is not an array or 
+ *          its value is null.
+ */
+public static final Object extractArrayFeature(FeatureStructure fs, String feature) {
+	Feature ft = FeatureLookup.get(fs, feature);
+	if (ft == null) {
+		metrics.featureNotFound(fs.getType(), feature);
+		return null;
+	}
+	if (!ft.getRange().isArray())
+		return null;
+	return ArrayValues.copy(fs.getFeatureValue(ft), null);
+}
+
 
 /**
  * Sets a primitive string feature value in a feature structure.
  * <p>
  * If the feature is not a primitive or does not exist a null is returned.
+ * The feature is resolved once per type, for repeated writes to many feature
+ * structures see {@link FeatureWriter}.
  * <p>
  * @param fs	feature structure to extract feature from
  * @param feature  short name of feature to extract.
@@ -326,23 +648,15 @@ public static final String extractPrimitiveFeatureAsString(AnnotationFS afs, Str
  * @return  boolean indicating success or failure
  */
 public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature, String value){
-	Feature ft = null;
-	Type type = fs.getType();
+	FeatureWriter writer = FeatureWriter.get(fs, feature);
 	boolean ret=false;
 
 	try {
-		ft = initFeature(type, feature);
-		Type ftType = ft.getRange();
-
-		if (ftType.getName().equals(CAS.TYPE_NAME_STRING)) {
-			fs.setStringValue(ft, value);
-			ret = true;
-		} 
-	} catch (AnnotatorInitializationException e) {
-		logger.log(Level.INFO,"Failed to find feature for extract. " + e.toString(),e);
+		if (writer != null)
+			ret = writer.setStringValue(fs, value);
 	}
 	catch (CASRuntimeException e) {
-		logger.log(Level.INFO,"Failed to set feature value for feature: " + ft.getName() + " " + e.toString(),e);
+		logger.log(Level.INFO,"Failed to set feature value for feature: " + writer.getFeature().getName() + " " + e.toString(),e);
 	}
 	return ret;
 }
@@ -351,6 +665,8 @@ public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature,
  * Sets a primitive integer feature value in a feature structure.
  * <p>
  * If the feature is not a primitive or does not exist a null is returned.
+ * The feature is resolved once per type, for repeated writes to many feature
+ * structures see {@link FeatureWriter}.
  * <p>
  * @param fs	feature structure to extract feature from
  * @param feature  short name of feature to extract.
@@ -358,22 +674,15 @@ public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature,
  * @return  boolean indicating success or failure
  */
 public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature, int value){
-	Feature ft = null;
-	Type type = fs.getType();
+	FeatureWriter writer = FeatureWriter.get(fs, feature);
 	boolean ret = false;
 
 	try {
-		ft = initFeature(type, feature);
-		Type ftType = ft.getRange();
-		if (ftType.getName().equals(CAS.TYPE_NAME_INTEGER)) {
-			fs.setIntValue(ft, value);	
-			ret = true;
-		}
-	} catch (AnnotatorInitializationException e) {
-		logger.log(Level.INFO,"Failed to find feature for extract. " + e.toString(),e);
+		if (writer != null)
+			ret = writer.setIntValue(fs, value);
 	}
 	catch (CASRuntimeException e) {
-		logger.log(Level.INFO,"Failed to set feature value for feature: " + ft.getName() + " " + e.toString(),e);
+		logger.log(Level.INFO,"Failed to set feature value for feature: " + writer.getFeature().getName() + " " + e.toString(),e);
 	}
 	return ret;
 }
@@ -382,6 +691,8 @@ public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature,
  * Sets a primitive boolean feature value in a feature structure.
  * <p>
  * If the feature is not a primitive or does not exist a null is returned.
+ * The feature is resolved once per type, for repeated writes to many feature
+ * structures see {@link FeatureWriter}.
  * <p>
  * @param fs	feature structure to extract feature from
  * @param feature  short name of feature to extract.
@@ -389,22 +700,15 @@ public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature,
  * @return  boolean indicating success or failure
  */
 public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature, boolean value){
-	Feature ft = null;
-	Type type = fs.getType();
+	FeatureWriter writer = FeatureWriter.get(fs, feature);
 	boolean ret = false;
 
 	try {
-		ft = initFeature(type, feature);
-		Type ftType = ft.getRange();
-		if (ftType.getName().equals(CAS.TYPE_NAME_BOOLEAN)) {
-			fs.setBooleanValue(ft, value);	
-			ret = true;
-		}
-	} catch (AnnotatorInitializationException e) {
-		logger.log(Level.INFO,"Failed to find feature for extract. " + e.toString(),e);
+		if (writer != null)
+			ret = writer.setBooleanValue(fs, value);
 	}
 	catch (CASRuntimeException e) {
-		logger.log(Level.INFO,"Failed to set feature value for feature: " + ft.getName() + " " + e.toString(),e);
+		logger.log(Level.INFO,"Failed to set feature value for feature: " + writer.getFeature().getName() + " " + e.toString(),e);
 	}
 	return ret;
 }
@@ -413,49 +717,14 @@ public static final boolean setPrimitiveFeature(AnnotationFS fs, String feature,
  * Extract ICA's MetaFields from the CAS.
  * <p>
  * MetaFields are name value pairs typically added by crawlers or crawler plugins. 
+ * Where a name has several values the last is returned, use {@link MetaFields#extract(CAS)}
+ * to get every value or to read ICMMetaFields in the same call.
  * <p>
  * @param  cas 
  * @return properties representing name value pairs
  */	
 public static final Properties extractICAMetaFields(CAS cas) {
-	Properties metadata = new Properties();
-	TypeSystem ts = cas.getTypeSystem();
-	Feature feature = ts.getFeatureByFullName("uima.tcas.DocumentAnnotation:id");
-	if (feature != null) {
-		Iterator<CAS> itr = cas.getViewIterator();
-		while (itr.hasNext()) {
-			CAS c = (CAS)itr.next();
-			String sofaId = c.getSofa().getSofaID();
-
-			if (sofaId.equals("_InitialView")) {
-
-				Type metadataType = ts.getType("com.ibm.es.oze.MetaField");
-				if (metadataType != null) {
-					try {
-						//FSIterator metaIterator = cas.getIndexRepository().get
-						FSIterator<TOP> metaIterator = cas.getJCas().getJFSIndexRepository().getAllIndexedFS(metadataType);
-						Feature nameFeature = metadataType.getFeatureByBaseName("name");
-						Feature valueFeature = metadataType.getFeatureByBaseName("value");
-						if (nameFeature != null && valueFeature != null) {
-							while (metaIterator.hasNext())
-							{
-								FeatureStructure fs = (FeatureStructure)metaIterator.next();
-								String name = fs.getFeatureValueAsString(nameFeature);
-								String value = fs.getFeatureValueAsString(valueFeature);
-								if (name != null && !name.isEmpty())
-									if (value != null && !value.isEmpty())
-										metadata.put(name, value);
-							}
-						}
-					}
-					catch (CASException e) {
-						logger.log(Level.WARNING,e.toString(),e);
-					}
-				}
-			}
-		}
-	}
-	return metadata;
+	return MetaFields.extract(cas, true, false).getICAFields().toProperties();
 }
 
 /**
@@ -467,44 +736,7 @@ public static final Properties extractICAMetaFields(CAS cas) {
  * @return properties representing name value pairs
  */	
 public static final Properties extractICMMetaFields(CAS cas) {
-	Properties metadata = new Properties();
-	TypeSystem ts = cas.getTypeSystem();
-	Feature feature = ts.getFeatureByFullName("uima.tcas.DocumentAnnotation:id");
-	if (feature != null) {
-		Iterator<CAS> itr = cas.getViewIterator();
-		while (itr.hasNext()) {
-			CAS c = (CAS)itr.next();
-			String sofaId = c.getSofa().getSofaID();
-
-			if (sofaId.equals("_InitialView")) {
-
-				Type metadataType = ts.getType("com.ibm.es.oze.ICMMetaField");
-				if (metadataType != null) {
-					try {
-						//FSIterator metaIterator = cas.getIndexRepository().get
-						FSIterator<TOP> metaIterator = cas.getJCas().getJFSIndexRepository().getAllIndexedFS(metadataType);
-						Feature nameFeature = metadataType.getFeatureByBaseName("name");
-						Feature valueFeature = metadataType.getFeatureByBaseName("value");
-						if (nameFeature != null && valueFeature != null) {
-							while (metaIterator.hasNext())
-							{
-								FeatureStructure fs = (FeatureStructure)metaIterator.next();
-								String name = fs.getFeatureValueAsString(nameFeature);
-								String value = fs.getFeatureValueAsString(valueFeature);
-								if (name != null && !name.isEmpty())
-									if (value != null && !value.isEmpty())
-										metadata.put(name, value);
-							}
-						}
-					}
-					catch (CASException e) {
-						logger.log(Level.WARNING,e.toString(),e);
-					}
-				}
-			}
-		}
-	}
-	return metadata;
+	return MetaFields.extract(cas, false, true).getICMFields().toProperties();
 }
 
 /**
@@ -515,6 +747,7 @@ public static final Properties extractICMMetaFields(CAS cas) {
  * @param parameter Parameter name.
  * @return          Parameter value.
  * @throws ResourceInitializationException 
+ * @see ConfigurationBinder for values read once and reused
  */
 public static final String getConfigurationStringValue(UimaContext context, String groupName, String parameter) throws ResourceInitializationException{
 	String ret = null;
@@ -537,6 +770,7 @@ public static final String getConfigurationStringValue(UimaContext context, Stri
  * @param parameter Parameter name.
  * @return          Parameter value.
  * @throws ResourceInitializationException 
+ * @see ConfigurationBinder for values read once and reused
  */
 public static final Integer getConfigurationIntegerValue(UimaContext context, String groupName, String parameter) throws ResourceInitializationException{
 	Integer ret = null;
@@ -559,6 +793,7 @@ public static final Integer getConfigurationIntegerValue(UimaContext context, St
  * @param parameter Parameter name.
  * @return          Parameter value.
  * @throws ResourceInitializationException 
+ * @see ConfigurationBinder for values read once and reused
  */
 public static final Boolean getConfigurationBooleanValue(UimaContext context, String groupName, String parameter) throws ResourceInitializationException{
 	Boolean ret = null;
@@ -0,0 +1,345 @@
+package com.mns.uima.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.Type;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+/**
+ * Counters and latency histograms for CASUtils, MetaFields and DocumentDetails.
+ * <p>
+ * One instance per class loader is registered with the platform MBean server as
+ * com.mns.uima.utils:type=CASUtilsMetrics when first used. Counters are lock free
+ * so recording adds little to an extraction, and recording can be switched off
+ * over JMX or by starting the JVM with -Dcom.mns.uima.utils.metrics=false.
+ * <p>
+ * "Type not found" messages are logged at most once per type per interval, with a
+ * count of the messages suppressed since the last one. "Feature not found" messages
+ * are logged once per type and feature, later misses are only counted. The names
+ * come from callers, so at most {@value #MAX_NAMES_NOT_FOUND} missing types and as
+ * many missing features are tracked: beyond that, missing types share one log
+ * interval and further missing features are counted but not logged.
+ */
+public final class CASUtilsMetrics implements CASUtilsMetricsMXBean {
+	public static final String OBJECT_NAME = "com.mns.uima.utils:type=CASUtilsMetrics";
+	static final int MAX_NAMES_NOT_FOUND = 1024;
+
+	private static final Logger logger = UIMAFramework.getLogger(CASUtils.class);
+	private static final CASUtilsMetrics instance = register(new CASUtilsMetrics());
+
+	private volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("com.mns.uima.utils.metrics"));
+	private volatile long typeNotFoundLogIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+
+	private final ConcurrentHashMap<String, TypeStats> types = new ConcurrentHashMap<String, TypeStats>();
+	private final ConcurrentHashMap<String, TypeNotFound> typesNotFound = new ConcurrentHashMap<String, TypeNotFound>();
+	private final TypeNotFound otherTypesNotFound = new TypeNotFound(System.nanoTime());
+	private final ConcurrentHashMap<String, Set<String>> featuresNotFound = new ConcurrentHashMap<String, Set<String>>();
+	private final AtomicInteger featuresNotFoundLogged = new AtomicInteger();
+	private final AtomicBoolean featuresNotFoundFull = new AtomicBoolean();
+	private final LatencyHistogram extractionLatency = new LatencyHistogram();
+	private final LatencyHistogram documentDetailsLatency = new LatencyHistogram();
+	private final LongAdder typeMisses = new LongAdder();
+	private final LongAdder featureMisses = new LongAdder();
+	private final LongAdder metaFieldExtractions = new LongAdder();
+	private final LongAdder metaFieldsExtracted = new LongAdder();
+
+	private CASUtilsMetrics() {
+	}
+
+	private static CASUtilsMetrics register(CASUtilsMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(metrics, name);
+		} catch (JMException | SecurityException e) {
+			logger.log(Level.WARNING, "Failed to register " + OBJECT_NAME + " " + e.toString(), e);
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return the metrics of this class loader.
+	 */
+	public static CASUtilsMetrics get() {
+		return instance;
+	}
+
+	/**
+	 * Start timing an operation.
+	 * <p>
+	 * @return start time to pass to the record method, 0 if metrics are off.
+	 */
+	long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Record an extraction call for a type.
+	 * <p>
+	 * @param  typeName requested type name
+	 * @param  annotations number of annotations extracted
+	 * @param  start value returned by {@link #start()}
+	 */
+	void extraction(String typeName, int annotations, long start) {
+		if (!enabled || start == 0)
+			return;
+		long nanos = System.nanoTime() - start;
+		extractionLatency.record(nanos);
+		TypeStats stats = typeStats(typeName);
+		stats.calls.increment();
+		stats.annotations.add(annotations);
+		stats.nanos.add(nanos);
+	}
+
+	/**
+	 * Record a one pass extraction of several types.
+	 * <p>
+	 * The time is recorded once for the pass, per type only the calls and annotations.
+	 */
+	void extraction(String[] typeNames, int[] annotations, long start) {
+		if (!enabled || start == 0)
+			return;
+		extractionLatency.record(System.nanoTime() - start);
+		for (int i = 0; i < typeNames.length; i++) {
+			TypeStats stats = typeStats(typeNames[i]);
+			stats.calls.increment();
+			stats.annotations.add(annotations[i]);
+		}
+	}
+
+	private TypeStats typeStats(String typeName) {
+		TypeStats stats = types.get(typeName);
+		if (stats == null)
+			stats = types.computeIfAbsent(typeName, k -> new TypeStats());
+		return stats;
+	}
+
+	/**
+	 * Record and log, at most once per interval, a type that is not in the type system.
+	 */
+	void typeNotFound(String typeName) {
+		if (enabled)
+			typeMisses.increment();
+		long now = System.nanoTime();
+		TypeNotFound notFound = typesNotFound.get(typeName);
+		if (notFound == null) {
+			notFound = typesNotFound.size() < MAX_NAMES_NOT_FOUND
+					? typesNotFound.computeIfAbsent(typeName, k -> new TypeNotFound(now)) : otherTypesNotFound;
+		}
+		long next = notFound.nextLog.get();
+		if (now - next >= 0 && notFound.nextLog.compareAndSet(next, now + typeNotFoundLogIntervalNanos)) {
+			long suppressed = notFound.suppressed.sumThenReset();
+			if (suppressed == 0)
+				logger.log(Level.INFO, "Type " + typeName + " not found in typesystem");
+			else
+				logger.log(Level.INFO, "Type " + typeName + " not found in typesystem, " + suppressed + " more since last logged");
+		} else {
+			notFound.suppressed.increment();
+		}
+	}
+
+	/**
+	 * Record a feature that a type does not have, logging it the first time for the type and feature.
+	 */
+	void featureNotFound(Type type, String featureName) {
+		featureMiss();
+		String typeName = type.getName();
+		Set<String> logged = featuresNotFound.get(typeName);
+		if (logged != null && logged.contains(featureName))
+			return;
+		if (featuresNotFoundLogged.incrementAndGet() > MAX_NAMES_NOT_FOUND) {
+			featuresNotFoundLogged.decrementAndGet();
+			if (featuresNotFoundFull.compareAndSet(false, true))
+				logger.log(Level.INFO, "Failed to find feature " + typeName + ":" + featureName + ", over " + MAX_NAMES_NOT_FOUND
+						+ " missing features logged, further ones are counted but not logged");
+			return;
+		}
+		if (logged == null)
+			logged = featuresNotFound.computeIfAbsent(typeName, k -> ConcurrentHashMap.<String> newKeySet());
+		if (logged.add(featureName))
+			logger.log(Level.INFO, "Failed to find feature " + typeName + ":" + featureName + ", further misses are counted but not logged");
+		else
+			featuresNotFoundLogged.decrementAndGet();
+	}
+
+	void featureMiss() {
+		if (enabled)
+			featureMisses.increment();
+	}
+
+	void featureMisses(long misses) {
+		if (enabled && misses > 0)
+			featureMisses.add(misses);
+	}
+
+	void metaFields(int values) {
+		if (!enabled)
+			return;
+		metaFieldExtractions.increment();
+		metaFieldsExtracted.add(values);
+	}
+
+	void documentDetails(long start) {
+		if (enabled && start != 0)
+			documentDetailsLatency.record(System.nanoTime() - start);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public long getTypeNotFoundLogIntervalSeconds() {
+		return TimeUnit.NANOSECONDS.toSeconds(typeNotFoundLogIntervalNanos);
+	}
+
+	@Override
+	public void setTypeNotFoundLogIntervalSeconds(long seconds) {
+		typeNotFoundLogIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+	}
+
+	@Override
+	public long getExtractionCalls() {
+		return extractionLatency.count();
+	}
+
+	@Override
+	public long getAnnotationsExtracted() {
+		long annotations = 0;
+		for (TypeStats stats : types.values())
+			annotations += stats.annotations.sum();
+		return annotations;
+	}
+
+	@Override
+	public Map<String, Long> getExtractionCallsByType() {
+		return byType(stats -> stats.calls.sum());
+	}
+
+	@Override
+	public Map<String, Long> getAnnotationsExtractedByType() {
+		return byType(stats -> stats.annotations.sum());
+	}
+
+	@Override
+	public Map<String, Long> getExtractionMicrosByType() {
+		return byType(stats -> TimeUnit.NANOSECONDS.toMicros(stats.nanos.sum()));
+	}
+
+	private Map<String, Long> byType(ToLongFunction<TypeStats> value) {
+		TreeMap<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, TypeStats> entry : types.entrySet())
+			values.put(entry.getKey(), value.applyAsLong(entry.getValue()));
+		return values;
+	}
+
+	@Override
+	public double getExtractionMeanMicros() {
+		return extractionLatency.meanMicros();
+	}
+
+	@Override
+	public double getExtractionP50Micros() {
+		return extractionLatency.percentileMicros(50);
+	}
+
+	@Override
+	public double getExtractionP99Micros() {
+		return extractionLatency.percentileMicros(99);
+	}
+
+	@Override
+	public long getTypeMisses() {
+		return typeMisses.sum();
+	}
+
+	@Override
+	public long getFeatureMisses() {
+		return featureMisses.sum();
+	}
+
+	@Override
+	public long getMetaFieldExtractions() {
+		return metaFieldExtractions.sum();
+	}
+
+	@Override
+	public long getMetaFieldsExtracted() {
+		return metaFieldsExtracted.sum();
+	}
+
+	@Override
+	public long getDocumentDetailsExtractions() {
+		return documentDetailsLatency.count();
+	}
+
+	@Override
+	public double getDocumentDetailsMeanMicros() {
+		return documentDetailsLatency.meanMicros();
+	}
+
+	@Override
+	public double getDocumentDetailsP50Micros() {
+		return documentDetailsLatency.percentileMicros(50);
+	}
+
+	@Override
+	public double getDocumentDetailsP99Micros() {
+		return documentDetailsLatency.percentileMicros(99);
+	}
+
+	@Override
+	public void reset() {
+		types.clear();
+		extractionLatency.reset();
+		documentDetailsLatency.reset();
+		typeMisses.reset();
+		featureMisses.reset();
+		metaFieldExtractions.reset();
+		metaFieldsExtracted.reset();
+	}
+
+	/**
+	 * Counters of one requested type.
+	 */
+	private static final class TypeStats {
+		final LongAdder calls = new LongAdder();
+		final LongAdder annotations = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+	}
+
+	/**
+	 * When a missing type may next be logged and how many messages were skipped.
+	 */
+	private static final class TypeNotFound {
+		final AtomicLong nextLog;
+		final LongAdder suppressed = new LongAdder();
+
+		TypeNotFound(long now) {
+			nextLog = new AtomicLong(now);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.mns.uima.utils;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link CASUtilsMetrics}.
+ * <p>
+ * Registered as com.mns.uima.utils:type=CASUtilsMetrics on the platform MBean server.
+ * Times are in microseconds, percentiles are upper bounds accurate to a factor of two.
+ */
+public interface CASUtilsMetricsMXBean {
+
+	/**
+	 * @return true if metrics are being recorded.
+	 */
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return seconds between repeated "type not found" messages for the same type.
+	 */
+	long getTypeNotFoundLogIntervalSeconds();
+
+	void setTypeNotFoundLogIntervalSeconds(long seconds);
+
+	/**
+	 * @return number of extraction calls for all types.
+	 */
+	long getExtractionCalls();
+
+	/**
+	 * @return number of annotations extracted for all types.
+	 */
+	long getAnnotationsExtracted();
+
+	/**
+	 * @return number of extraction calls by requested type name.
+	 */
+	Map<String, Long> getExtractionCallsByType();
+
+	/**
+	 * @return number of annotations extracted by requested type name.
+	 */
+	Map<String, Long> getAnnotationsExtractedByType();
+
+	/**
+	 * @return total extraction time by requested type name, excluding one pass extraction of several types.
+	 */
+	Map<String, Long> getExtractionMicrosByType();
+
+	double getExtractionMeanMicros();
+
+	double getExtractionP50Micros();
+
+	double getExtractionP99Micros();
+
+	/**
+	 * @return number of extraction calls for types not in the type system.
+	 */
+	long getTypeMisses();
+
+	/**
+	 * @return number of feature reads or writes of features the type does not have.
+	 */
+	long getFeatureMisses();
+
+	/**
+	 * @return number of MetaField and ICMMetaField extractions.
+	 */
+	long getMetaFieldExtractions();
+
+	/**
+	 * @return number of meta field values extracted.
+	 */
+	long getMetaFieldsExtracted();
+
+	/**
+	 * @return number of DocumentDetails extractions.
+	 */
+	long getDocumentDetailsExtractions();
+
+	double getDocumentDetailsMeanMicros();
+
+	double getDocumentDetailsP50Micros();
+
+	double getDocumentDetailsP99Micros();
+
+	/**
+	 * Set every counter and histogram back to zero.
+	 */
+	void reset();
+}
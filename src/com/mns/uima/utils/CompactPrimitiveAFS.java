@@ -0,0 +1,298 @@
+package com.mns.uima.utils;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Compact PrimitiveAFS with typed feature slots laid out by a shared schema.
+ * <p>
+ * Instances of one annotation type share a {@link PrimitiveAFSSchema} and hold
+ * feature values in slot arrays, numeric and boolean values as raw bits without
+ * boxing or conversion to strings. Begin and end are only held as int fields.
+ * {@link #getFeatureValue(String)} returns the same strings as a PrimitiveAFS
+ * built by the default extraction and {@link #getFeatures()} an equivalent map,
+ * built on first use and read only: changing it throws
+ * UnsupportedOperationException rather than losing the write. Calling
+ * {@link #setFeatures(HashMap)} switches the instance to map storage.
+ */
+public class CompactPrimitiveAFS extends PrimitiveAFS {
+	/** Marks a string slot whose feature was not stored, as distinct from a null value. */
+	static final String ABSENT = new String();
+
+	private PrimitiveAFSSchema schema;
+	private final long[] values;
+	private final String[] strings;
+	private HashMap<String, String> features;
+
+	CompactPrimitiveAFS(PrimitiveAFSSchema schema) {
+		this.schema = schema;
+		this.values = schema.valueSlots() == 0 ? null : new long[schema.valueSlots()];
+		this.strings = schema.stringSlots() == 0 ? null : new String[schema.stringSlots()];
+	}
+
+	/**
+	 * @return the shared schema or null if the instance has switched to map storage.
+	 */
+	public PrimitiveAFSSchema getSchema() {
+		return schema;
+	}
+
+	void setValueBits(int i, long bits) {
+		values[schema.slot(i)] = bits;
+		features = null;
+	}
+
+	void setStringValue(int i, String value) {
+		strings[schema.slot(i)] = value;
+		features = null;
+	}
+
+	@Override
+	public void setBegin(int begin) {
+		setSpan(begin, getEnd());
+	}
+
+	@Override
+	public void setEnd(int end) {
+		setSpan(getBegin(), end);
+	}
+
+	/**
+	 * @return the features as a read only map, or the map set by {@link #setFeatures(HashMap)}.
+	 */
+	@Override
+	public HashMap<String, String> getFeatures() {
+		if (schema == null)
+			return super.getFeatures();
+		if (features == null)
+			features = new ReadOnlyFeatures(this);
+		return features;
+	}
+
+	@Override
+	public void setFeatures(HashMap<String, String> features) {
+		schema = null;
+		this.features = null;
+		super.setFeatures(features);
+	}
+
+	@Override
+	public String getFeatureValue(String feature) {
+		if (schema == null)
+			return super.getFeatureValue(feature);
+		int i = schema.indexOf(feature);
+		return i < 0 ? null : format(i);
+	}
+
+	/**
+	 * Get an integer, short or byte feature value.
+	 * <p>
+	 * @param  feature base name of the feature
+	 * @return the value
+	 * @throws IllegalArgumentException if the feature is not held in an integer slot.
+	 */
+	public int getIntValue(String feature) {
+		int i = valueIndex(feature);
+		byte kind = schema.kind(i);
+		if (kind != PrimitiveAFSSchema.INT && kind != PrimitiveAFSSchema.SHORT && kind != PrimitiveAFSSchema.BYTE)
+			throw new IllegalArgumentException("Feature " + feature + " is not an integer");
+		return (int) values[schema.slot(i)];
+	}
+
+	/**
+	 * Get a long, integer, short or byte feature value.
+	 * <p>
+	 * @param  feature base name of the feature
+	 * @return the value
+	 * @throws IllegalArgumentException if the feature is not held in an integral slot.
+	 */
+	public long getLongValue(String feature) {
+		int i = valueIndex(feature);
+		if (schema.kind(i) == PrimitiveAFSSchema.LONG)
+			return values[schema.slot(i)];
+		return getIntValue(feature);
+	}
+
+	/**
+	 * Get a numeric feature value as a double.
+	 * <p>
+	 * @param  feature base name of the feature
+	 * @return the value
+	 * @throws IllegalArgumentException if the feature is not held in a numeric slot.
+	 */
+	public double getDoubleValue(String feature) {
+		int i = valueIndex(feature);
+		long bits = values[schema.slot(i)];
+		switch (schema.kind(i)) {
+		case PrimitiveAFSSchema.DOUBLE:
+			return Double.longBitsToDouble(bits);
+		case PrimitiveAFSSchema.FLOAT:
+			return Float.intBitsToFloat((int) bits);
+		case PrimitiveAFSSchema.BOOLEAN:
+			throw new IllegalArgumentException("Feature " + feature + " is not numeric");
+		default:
+			return bits;
+		}
+	}
+
+	/**
+	 * Get a boolean feature value.
+	 * <p>
+	 * @param  feature base name of the feature
+	 * @return the value
+	 * @throws IllegalArgumentException if the feature is not held in a boolean slot.
+	 */
+	public boolean getBooleanValue(String feature) {
+		int i = valueIndex(feature);
+		if (schema.kind(i) != PrimitiveAFSSchema.BOOLEAN)
+			throw new IllegalArgumentException("Feature " + feature + " is not a boolean");
+		return values[schema.slot(i)] != 0;
+	}
+
+	private int valueIndex(String feature) {
+		int i = schema == null ? -1 : schema.indexOf(feature);
+		if (i < 0 || schema.kind(i) == PrimitiveAFSSchema.STRING)
+			throw new IllegalArgumentException("Feature " + feature + " is not held in a value slot");
+		return i;
+	}
+
+	private String format(int i) {
+		byte kind = schema.kind(i);
+		if (kind == PrimitiveAFSSchema.STRING) {
+			String str = strings[schema.slot(i)];
+			return str == ABSENT ? null : str;
+		}
+		return PrimitiveAFSSchema.format(kind, values[schema.slot(i)]);
+	}
+
+	/**
+	 * The slots of an instance copied into a map whose changes throw.
+	 * <p>
+	 * getFeatures() is declared to return a HashMap, so the map cannot be an
+	 * unmodifiable wrapper. Its key, value and entry views are unmodifiable.
+	 */
+	private static final class ReadOnlyFeatures extends HashMap<String, String> {
+		private static final long serialVersionUID = 1L;
+
+		private transient Map<String, String> view;
+
+		ReadOnlyFeatures(CompactPrimitiveAFS pafs) {
+			super(pafs.schema.size() * 4 / 3 + 1);
+			PrimitiveAFSSchema schema = pafs.schema;
+			for (int i = 0; i < schema.size(); i++) {
+				if (schema.kind(i) != PrimitiveAFSSchema.STRING || pafs.strings[schema.slot(i)] != ABSENT)
+					super.put(schema.featureName(i), pafs.format(i));
+			}
+		}
+
+		private Map<String, String> view() {
+			if (view == null) {
+				view = Collections.unmodifiableMap(new AbstractMap<String, String>() {
+					@Override
+					public Set<Map.Entry<String, String>> entrySet() {
+						return ReadOnlyFeatures.super.entrySet();
+					}
+				});
+			}
+			return view;
+		}
+
+		private static UnsupportedOperationException readOnly() {
+			return new UnsupportedOperationException("Features of a CompactPrimitiveAFS are read only, use setFeatures to replace them");
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return view().keySet();
+		}
+
+		@Override
+		public Collection<String> values() {
+			return view().values();
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return view().entrySet();
+		}
+
+		/**
+		 * @return a modifiable copy.
+		 */
+		@Override
+		public Object clone() {
+			return new HashMap<String, String>(this);
+		}
+
+		@Override
+		public String put(String key, String value) {
+			throw readOnly();
+		}
+
+		@Override
+		public void putAll(Map<? extends String, ? extends String> m) {
+			throw readOnly();
+		}
+
+		@Override
+		public String remove(Object key) {
+			throw readOnly();
+		}
+
+		@Override
+		public boolean remove(Object key, Object value) {
+			throw readOnly();
+		}
+
+		@Override
+		public void clear() {
+			throw readOnly();
+		}
+
+		@Override
+		public String putIfAbsent(String key, String value) {
+			throw readOnly();
+		}
+
+		@Override
+		public boolean replace(String key, String oldValue, String newValue) {
+			throw readOnly();
+		}
+
+		@Override
+		public String replace(String key, String value) {
+			throw readOnly();
+		}
+
+		@Override
+		public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+			throw readOnly();
+		}
+
+		@Override
+		public String computeIfAbsent(String key, Function<? super String, ? extends String> mappingFunction) {
+			throw readOnly();
+		}
+
+		@Override
+		public String computeIfPresent(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+			throw readOnly();
+		}
+
+		@Override
+		public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+			throw readOnly();
+		}
+
+		@Override
+		public String merge(String key, String value, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+			throw readOnly();
+		}
+	}
+}
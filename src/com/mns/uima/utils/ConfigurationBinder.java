@@ -0,0 +1,210 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.UimaContextAdmin;
+import org.apache.uima.resource.ResourceConfigurationException;
+import org.apache.uima.resource.ResourceInitializationException;
+
+/**
+ * Reads an annotator's configuration parameters once into a typed snapshot.
+ * <p>
+ * Parameters are declared once, typically as fields of the annotator, each as a
+ * typed {@link Parameter} handle with a group, a name and either no default, in
+ * which case a setting is required, or a default used when there is no setting.
+ * {@link #bind(UimaContext)} reads every parameter into an immutable
+ * {@link ConfigurationSnapshot} and makes it current, or reports every missing
+ * setting in one exception and leaves the current snapshot as it was. Call it
+ * from initialize and reconfigure, and read values in process from
+ * {@link #current()}, which costs a volatile read and an array access rather than
+ * a context lookup per value.
+ * <pre>
+ * private final ConfigurationBinder config = new ConfigurationBinder();
+ * private final Parameter&lt;String&gt; url = config.add(null, "Url", String.class);
+ * private final Parameter&lt;Integer&gt; batch = config.add(null, "BatchSize", Integer.class, 100);
+ *
+ * public void initialize(UimaContext context) throws ResourceInitializationException {
+ *   super.initialize(context);
+ *   config.bind(context);
+ * }
+ *
+ * public void reconfigure() throws ResourceConfigurationException, ResourceInitializationException {
+ *   super.reconfigure();
+ *   config.bind(getContext());
+ * }
+ *
+ * public void process(JCas jcas) {
+ *   ConfigurationSnapshot settings = config.current();
+ *   int size = settings.getInt(batch);
+ *   ...
+ * </pre>
+ * Parameters must all be added before the first bind. Binding and reading can
+ * then happen on any thread.
+ */
+public final class ConfigurationBinder {
+	private static final List<Class<?>> TYPES = new ArrayList<Class<?>>();
+	static {
+		TYPES.add(String.class);
+		TYPES.add(Integer.class);
+		TYPES.add(Float.class);
+		TYPES.add(Boolean.class);
+		TYPES.add(String[].class);
+		TYPES.add(Integer[].class);
+		TYPES.add(Float[].class);
+		TYPES.add(Boolean[].class);
+	}
+
+	private final List<Parameter<?>> parameters = new ArrayList<Parameter<?>>();
+	private final AtomicReference<ConfigurationSnapshot> current = new AtomicReference<ConfigurationSnapshot>();
+	private volatile boolean bound;
+
+	/**
+	 * Declare a parameter that must have a setting.
+	 * <p>
+	 * @param  groupName Parameter group name or null if no group.
+	 * @param  name Parameter name.
+	 * @param  type String, Integer, Float, Boolean or an array of one of them for a multi valued parameter.
+	 * @return the handle to read the value with.
+	 */
+	public <T> Parameter<T> add(String groupName, String name, Class<T> type) {
+		return add(groupName, name, type, null, true);
+	}
+
+	/**
+	 * Declare a parameter with a default value.
+	 * <p>
+	 * @param  groupName Parameter group name or null if no group.
+	 * @param  name Parameter name.
+	 * @param  type String, Integer, Float, Boolean or an array of one of them for a multi valued parameter.
+	 * @param  defaultValue value when there is no setting, may be null.
+	 * @return the handle to read the value with.
+	 */
+	public <T> Parameter<T> add(String groupName, String name, Class<T> type, T defaultValue) {
+		return add(groupName, name, type, defaultValue, false);
+	}
+
+	private synchronized <T> Parameter<T> add(String groupName, String name, Class<T> type, T defaultValue, boolean required) {
+		if (bound)
+			throw new IllegalStateException("Parameter " + name + " added after the configuration was bound");
+		if (!TYPES.contains(type))
+			throw new IllegalArgumentException("Unsupported type " + type.getName() + " for parameter " + name);
+		Parameter<T> parameter = new Parameter<T>(this, parameters.size(), groupName, name, type, defaultValue, required);
+		parameters.add(parameter);
+		return parameter;
+	}
+
+	/**
+	 * Read every parameter from a context and make the values current.
+	 * <p>
+	 * @param  context uima context
+	 * @return the new snapshot
+	 * @throws ResourceInitializationException if settings are absent, naming all of them,
+	 *         or if a value does not have the declared type. The current snapshot is not changed.
+	 */
+	public synchronized ConfigurationSnapshot bind(UimaContext context) throws ResourceInitializationException {
+		bound = true;
+		Object[] values = new Object[parameters.size()];
+		boolean[] set = new boolean[values.length];
+		StringBuilder missing = null;
+		for (Parameter<?> parameter : parameters) {
+			Object value = parameter.groupName == null ? context.getConfigParameterValue(parameter.name)
+					: context.getConfigParameterValue(parameter.groupName, parameter.name);
+			if (value == null) {
+				if (parameter.required) {
+					if (missing == null)
+						missing = new StringBuilder();
+					else
+						missing.append(", ");
+					missing.append(parameter);
+				}
+				value = parameter.defaultValue;
+			} else if (!parameter.type.isInstance(value)) {
+				throw new ResourceInitializationException(ResourceConfigurationException.PARAMETER_TYPE_MISMATCH,
+						new Object[] {componentName(context), value.getClass().getName(), parameter, parameter.type.getName()});
+			} else {
+				set[parameter.index] = true;
+			}
+			if (value instanceof Object[])
+				value = ((Object[]) value).clone();
+			values[parameter.index] = value;
+		}
+		if (missing != null) {
+			throw new ResourceInitializationException (
+					ResourceInitializationException.CONFIG_SETTING_ABSENT, new Object[] {missing.toString()});
+		}
+		ConfigurationSnapshot previous = current.get();
+		ConfigurationSnapshot snapshot = new ConfigurationSnapshot(this, values, set, previous == null ? 1 : previous.getVersion() + 1);
+		current.set(snapshot);
+		return snapshot;
+	}
+
+	private static String componentName(UimaContext context) {
+		return context instanceof UimaContextAdmin ? ((UimaContextAdmin) context).getQualifiedContextName() : "";
+	}
+
+	/**
+	 * @return the snapshot made by the last successful bind.
+	 * @throws IllegalStateException if the configuration has not been bound.
+	 */
+	public ConfigurationSnapshot current() {
+		ConfigurationSnapshot snapshot = current.get();
+		if (snapshot == null)
+			throw new IllegalStateException("Configuration has not been bound");
+		return snapshot;
+	}
+
+	/**
+	 * Handle to one declared parameter, used to read its value from a snapshot.
+	 *
+	 * @param <T> the type of the value
+	 */
+	public static final class Parameter<T> {
+		final ConfigurationBinder binder;
+		final int index;
+		final String groupName;
+		final String name;
+		final Class<T> type;
+		final T defaultValue;
+		final boolean required;
+
+		Parameter(ConfigurationBinder binder, int index, String groupName, String name, Class<T> type, T defaultValue, boolean required) {
+			this.binder = binder;
+			this.index = index;
+			this.groupName = groupName;
+			this.name = name;
+			this.type = type;
+			this.defaultValue = defaultValue;
+			this.required = required;
+		}
+
+		/**
+		 * @return Parameter group name or null if no group.
+		 */
+		public String getGroupName() {
+			return groupName;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<T> getType() {
+			return type;
+		}
+
+		/**
+		 * @return true if the parameter has no default and must have a setting.
+		 */
+		public boolean isRequired() {
+			return required;
+		}
+
+		@Override
+		public String toString() {
+			return groupName == null ? name : groupName + "/" + name;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.mns.uima.utils;
+
+import com.mns.uima.utils.ConfigurationBinder.Parameter;
+
+/**
+ * Immutable parameter values read by a {@link ConfigurationBinder}.
+ * <p>
+ * Values are read by their parameter handles. Each bind makes a new snapshot, so
+ * values read from one snapshot are always consistent with each other even if the
+ * annotator is reconfigured meanwhile. The arrays of multi valued parameters are
+ * copies owned by the snapshot and must not be changed.
+ */
+public final class ConfigurationSnapshot {
+	private final ConfigurationBinder binder;
+	private final Object[] values;
+	private final boolean[] set;
+	private final long version;
+
+	ConfigurationSnapshot(ConfigurationBinder binder, Object[] values, boolean[] set, long version) {
+		this.binder = binder;
+		this.values = values;
+		this.set = set;
+		this.version = version;
+	}
+
+	/**
+	 * @param  parameter handle from the binder that made the snapshot
+	 * @return the value, the default if there was no setting.
+	 */
+	public <T> T get(Parameter<T> parameter) {
+		return parameter.type.cast(values[index(parameter)]);
+	}
+
+	/**
+	 * @param  parameter Integer parameter
+	 * @return the value
+	 * @throws NullPointerException if the parameter has no value.
+	 */
+	public int getInt(Parameter<Integer> parameter) {
+		return (Integer) values[index(parameter)];
+	}
+
+	/**
+	 * @param  parameter Float parameter
+	 * @return the value
+	 * @throws NullPointerException if the parameter has no value.
+	 */
+	public float getFloat(Parameter<Float> parameter) {
+		return (Float) values[index(parameter)];
+	}
+
+	/**
+	 * @param  parameter Boolean parameter
+	 * @return the value
+	 * @throws NullPointerException if the parameter has no value.
+	 */
+	public boolean getBoolean(Parameter<Boolean> parameter) {
+		return (Boolean) values[index(parameter)];
+	}
+
+	/**
+	 * @param  parameter handle from the binder that made the snapshot
+	 * @return true if the value came from a setting rather than the default.
+	 */
+	public boolean isSet(Parameter<?> parameter) {
+		return set[index(parameter)];
+	}
+
+	/**
+	 * @return 1 for the first bind, increasing with each bind.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	private int index(Parameter<?> parameter) {
+		if (parameter.binder != binder)
+			throw new IllegalArgumentException("Parameter " + parameter + " is not from this configuration");
+		return parameter.index;
+	}
+}
@@ -7,16 +7,17 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.FeatureStructure;
-import org.apache.uima.cas.Type;
-import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.cas.text.AnnotationIndex;
 import org.apache.uima.examples.SourceDocumentInformation;
@@ -24,7 +25,11 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.util.Level;
 /** 
- * Document details from ICA pipeline. Static only cannot be instantiated.
+ * Document details from ICA pipeline.
+ * <p>
+ * An immutable DocumentDetails is extracted per CAS with {@link #extract(JCas)} so
+ * several CASes can be processed concurrently. The static fields and 
+ * {@link #extractDocumentDetails(JCas)} are kept for existing callers.
  * <p>
  * @author      Martin Saunders <martin.saunders@uk.ibm.com>
  * @version     1.1 $Revision: 125 $            
@@ -68,137 +73,259 @@ import org.apache.uima.util.Level;
  * 		deleteDocument="false"/>
  */
 public class DocumentDetails {
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getId()} */
+	@Deprecated
 	public static String id;			// from UIMA DocumentAnnotation ICA version
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getLanguage()} */
+	@Deprecated
 	public static String language;		// from UIMA DocumentAnnotation
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getUrl()} */
+	@Deprecated
 	public static String url; 			// from ICA DocumentMetaData
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getTitle()} */
+	@Deprecated
 	public static String title;			// from ICA DocumentMetaData
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getDataSource()} */
+	@Deprecated
 	public static String dataSource;	// from ICA DocumentMetaData
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getDataSourceName()} */
+	@Deprecated
 	public static String dataSourceName;// from ICA DocumentMetaData
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getDocType()} */
+	@Deprecated
 	public static String docType;		// from ICA DocumentMetaData
+	/** @deprecated not safe with concurrent CASes, use {@link #extract(JCas)} and {@link #getDocDate()} */
+	@Deprecated
 	public static Date   docDate;
 
-	private static final String SOURCE_DOCUMENT_INFORMATION_TYPE = "org.apache.uima.examples.SourceDocumentInformation";
+	private static final String UNKNOWN = "unknown";
+	private static final CASUtilsMetrics metrics = CASUtilsMetrics.get();
+
+	private final String documentId;
+	private final String documentLanguage;
+	private final String documentUrl;
+	private final String documentTitle;
+	private final String documentDataSource;
+	private final String documentDataSourceName;
+	private final String documentType;
+	private final long documentDate;
+	private final Map<String, String> metaData;
+
+	private DocumentDetails(Values values) {
+		this.documentId = values.id;
+		this.documentLanguage = values.language;
+		this.documentUrl = values.url;
+		this.documentTitle = values.title;
+		this.documentDataSource = values.dataSource;
+		this.documentDataSourceName = values.dataSourceName;
+		this.documentType = values.docType;
+		this.documentDate = values.docDate;
+		this.metaData = values.metaData == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(values.metaData);
+	}
 
 	/**
-	 * Suppress default constructor so it can't be instantiated.
-	 * <p>
-	 * @throws AssertionError
-	 */	
-	private DocumentDetails(){
-		throw new AssertionError();
+	 * @return document id from the UIMA DocumentAnnotation, or "unknown".
+	 */
+	public String getId() {
+		return documentId;
 	}
 
 	/**
-	 * Initialise object with metadata about a document from UIMA and ICA document details.
-	 * <p>
-	 *
+	 * @return document language from the UIMA DocumentAnnotation, or "unknown".
 	 */
-	public static void extractDocumentDetails(JCas jcas) {
-		DocumentDetails.id="unknown";	
-		DocumentDetails.language="unknown";	
-		DocumentDetails.url="unknown"; 	
-		DocumentDetails.title="unknown";
-		DocumentDetails.dataSource="unknown";
-		DocumentDetails.dataSourceName="unknown";
-		DocumentDetails.docType="unknown";	
-		DocumentDetails.docDate=new Date(0); // initialise to 01-01-1970
+	public String getLanguage() {
+		return documentLanguage;
+	}
 
+	/**
+	 * @return document url from the ICA DocumentMetaData or SourceDocumentInformation, or "unknown".
+	 */
+	public String getUrl() {
+		return documentUrl;
+	}
 
-		// Find the CAS that has the document metadata set by ICA - it has the additional esDocumentMetaData feature
-		CAS cas = jcas.getCas();
-		getDocumentLanguage(cas);
-		
-		final Feature feature = cas.getTypeSystem().getFeatureByFullName(CAS.TYPE_NAME_DOCUMENT_ANNOTATION + TypeSystem.FEATURE_SEPARATOR + "esDocumentMetaData");
-		//final Feature feature = jcas.getTypeSystem().getFeatureByFullName(CAS.TYPE_NAME_DOCUMENT_ANNOTATION + TypeSystem.FEATURE_SEPARATOR + "esDocumentMetaData");
+	/**
+	 * @return document title from the ICA DocumentMetaData or file name, or "unknown".
+	 */
+	public String getTitle() {
+		return documentTitle;
+	}
 
-		if (feature != null) { // ICA id present in type system
+	/**
+	 * @return data source from the ICA DocumentMetaData, or "unknown".
+	 */
+	public String getDataSource() {
+		return documentDataSource;
+	}
 
-			final Iterator<?> itr = cas.getViewIterator();
-			while (itr.hasNext()) {
-				final CAS c = (CAS) itr.next();
-				final String sofaId = c.getSofa().getSofaID();
+	/**
+	 * @return data source name from the ICA DocumentMetaData, or "unknown".
+	 */
+	public String getDataSourceName() {
+		return documentDataSourceName;
+	}
 
-				if (sofaId.equals("_InitialView")) {
-					getICADocumentDetails(c);
-				}			
-			}
-		} else {  // not ICA so try SDK Examples CollectionReader
-			TypeSystem typeSystem = jcas.getTypeSystem();
-			Type sdiType = typeSystem.getType(SOURCE_DOCUMENT_INFORMATION_TYPE);
+	/**
+	 * @return document type from the ICA DocumentMetaData, or "unknown".
+	 */
+	public String getDocType() {
+		return documentType;
+	}
+
+	/**
+	 * @return document date from the ICA DocumentMetaData, or 01-01-1970 if not known.
+	 */
+	public Date getDocDate() {
+		return new Date(documentDate);
+	}
 
-			if (sdiType != null) {
+	/**
+	 * @return every primitive feature value of the ICA document metadata by feature 
+	 * base name, empty unless extracted with allMetaData.
+	 */
+	public Map<String, String> getMetaData() {
+		return metaData;
+	}
+
+	/**
+	 * Extract metadata about a document from UIMA and ICA document details.
+	 * <p>
+	 * Safe to call concurrently for different CASes. The features read are
+	 * resolved once per type system.
+	 * <p>
+	 * @param  jcas 
+	 * @return the document details, "unknown" for any that are not present.
+	 */
+	public static DocumentDetails extract(JCas jcas) {
+		return extract(jcas, false);
+	}
+
+	/**
+	 * Extract metadata about a document from UIMA and ICA document details.
+	 * <p>
+	 * As {@link #extract(JCas)}, optionally also reading the value of every 
+	 * primitive feature of the ICA document metadata (tt:DocumentMetaData), 
+	 * see {@link #getMetaData()}.
+	 * <p>
+	 * @param  jcas 
+	 * @param  allMetaData true to read every document metadata feature.
+	 * @return the document details, "unknown" for any that are not present.
+	 */
+	public static DocumentDetails extract(JCas jcas, boolean allMetaData) {
+		long start = metrics.start();
+		Values values = new Values();
+
+		CAS cas = jcas.getCas();
+		DocumentDetailsSchema schema = DocumentDetailsSchema.get(cas.getTypeSystem());
+		getDocumentLanguage(cas, schema, values);
+
+		if (schema.ica) { // ICA esDocumentMetaData present in type system
+			// the document metadata set by ICA is on the initial view
+			CAS c = CAS.NAME_DEFAULT_SOFA.equals(cas.getViewName()) ? cas : initialView(cas);
+			if (c != null)
+				getICADocumentDetails(c, schema, allMetaData, values);
+		} else {  // not ICA so try SDK Examples CollectionReader
+			if (schema.sdiType != null) {
 				AnnotationIndex<Annotation> sdiIdx = jcas.getAnnotationIndex(SourceDocumentInformation.type);
 				FSIterator<Annotation> sdiIt = sdiIdx.iterator();
 				for (sdiIt.moveToFirst(); sdiIt.isValid(); sdiIt.moveToNext()) {
 					SourceDocumentInformation srcDocInfo = (SourceDocumentInformation)  sdiIt.get();
 					String srcDocUri = srcDocInfo.getUri();
-					DocumentDetails.url = srcDocUri;
+					values.url = srcDocUri;
 					try {
 						File inFile = new File(new URL(srcDocUri).getPath());
 						String fileName = inFile.getName();
 						if (fileName!=null)
 							if (fileName.length() != 0)
-								DocumentDetails.title=fileName;
+								values.title=fileName;
 					} catch (MalformedURLException e1) {
 						UIMAFramework.getLogger().log(Level.WARNING,e1.toString(),e1);
 					}
 				}
 			}
 		}
+		metrics.documentDetails(start);
+		return new DocumentDetails(values);
+	}
 
+	private static CAS initialView(CAS cas) {
+		final Iterator<CAS> itr = cas.getViewIterator();
+		while (itr.hasNext()) {
+			final CAS c = itr.next();
+			if (c.getSofa().getSofaID().equals(CAS.NAME_DEFAULT_SOFA))
+				return c;
+		}
+		return null;
 	}
 
-	private static void getDocumentLanguage(CAS cas) {
+	/**
+	 * Initialise the static fields with metadata about a document from UIMA and ICA document details.
+	 * <p>
+	 * @deprecated the static fields are shared by all threads, use {@link #extract(JCas)}.
+	 */
+	@Deprecated
+	public static void extractDocumentDetails(JCas jcas) {
+		DocumentDetails details = extract(jcas);
+		DocumentDetails.id = details.documentId;
+		DocumentDetails.language = details.documentLanguage;
+		DocumentDetails.url = details.documentUrl;
+		DocumentDetails.title = details.documentTitle;
+		DocumentDetails.dataSource = details.documentDataSource;
+		DocumentDetails.dataSourceName = details.documentDataSourceName;
+		DocumentDetails.docType = details.documentType;
+		DocumentDetails.docDate = details.getDocDate();
+	}
+
+	private static void getDocumentLanguage(CAS cas, DocumentDetailsSchema schema, Values values) {
 		AnnotationFS doc = cas.getDocumentAnnotation();
-		Type documentAnnotType = doc.getType();
 
 		// get language features
-		Feature languageFeature	= documentAnnotType.getFeatureByBaseName("language");
+		Feature languageFeature	= schema.documentFeatures(doc.getType()).language;
 
 		if ( languageFeature != null ) {
 			String language = doc.getFeatureValueAsString(languageFeature);
-			if ( language != null )  DocumentDetails.language = language;
+			if ( language != null )  values.language = language;
 		}
 
 	}
 
-	private static void getICADocumentDetails(CAS cas) {
+	private static void getICADocumentDetails(CAS cas, DocumentDetailsSchema schema, boolean allMetaData, Values values) {
 
 		// get DocumentAnnotation type to retrieve the id and esDocumentMetaData features
 
 		AnnotationFS doc = cas.getDocumentAnnotation();
-		Type documentAnnotType = doc.getType();
+		DocumentDetailsSchema.DocumentFeatures documentFeatures = schema.documentFeatures(doc.getType());
 
 		// get id and language features
-		Feature idFeature 		= documentAnnotType.getFeatureByBaseName("id");
+		Feature idFeature 		= documentFeatures.id;
 
 		if ( idFeature != null ) {
 			String id = doc.getFeatureValueAsString(idFeature);
 			if ( id != null )  {
 				try {
-					DocumentDetails.id = URLDecoder.decode(id, "UTF-8");
+					values.id = URLDecoder.decode(id, "UTF-8");
 				} catch (UnsupportedEncodingException e) {
-					DocumentDetails.id = "unknown";
+					values.id = UNKNOWN;
 				}
 			}
 		}
 
 		// get esDocumentMetaData feature
-		Feature esDocumentMetaDataFeature = documentAnnotType.getFeatureByBaseName("esDocumentMetaData");
+		Feature esDocumentMetaDataFeature = documentFeatures.esDocumentMetaData;
 
 		if ( esDocumentMetaDataFeature != null ) {
 			// get document metadata from esDocumentMetaData feature
 			FeatureStructure esDocumentMetaData = doc.getFeatureValue(esDocumentMetaDataFeature);
 
 			if (esDocumentMetaData != null) {
-				Type esDocumentMetaDataType = esDocumentMetaData.getType();
+				DocumentDetailsSchema.MetaDataFeatures metaDataFeatures = schema.metaDataFeatures(esDocumentMetaData.getType());
 
-				Feature urlFeature				= esDocumentMetaDataType.getFeatureByBaseName("url");
-				Feature docTypeFeature			= esDocumentMetaDataType.getFeatureByBaseName("docType");
-				Feature titleFeature			= esDocumentMetaDataType.getFeatureByBaseName("title");
-				Feature dataSourceFeature		= esDocumentMetaDataType.getFeatureByBaseName("dataSource");
-				Feature dataSourceNameFeature	= esDocumentMetaDataType.getFeatureByBaseName("dataSourceName");
-				Feature docDateFeature	= esDocumentMetaDataType.getFeatureByBaseName("date");
+				Feature urlFeature				= metaDataFeatures.url;
+				Feature docTypeFeature			= metaDataFeatures.docType;
+				Feature titleFeature			= metaDataFeatures.title;
+				Feature dataSourceFeature		= metaDataFeatures.dataSource;
+				Feature dataSourceNameFeature	= metaDataFeatures.dataSourceName;
+				Feature docDateFeature	= metaDataFeatures.date;
 
 				// Note the Features are defined on the type but not all values are present, 
 				// depends on the crawler used so check each one.
@@ -206,33 +333,33 @@ public class DocumentDetails {
 					String str = esDocumentMetaData.getStringValue(urlFeature);  
 					if (str != null) {
 						try {
-							DocumentDetails.url = URLDecoder.decode(str, "UTF-8");
+							values.url = URLDecoder.decode(str, "UTF-8");
 						} catch (UnsupportedEncodingException e) {
-							DocumentDetails.url = "unknown";
+							values.url = UNKNOWN;
 						}
 					}
 				}
 				if(dataSourceFeature != null) {
 					String str = esDocumentMetaData.getStringValue(dataSourceFeature);
-					if (str != null) DocumentDetails.dataSource = str;							
+					if (str != null) values.dataSource = str;							
 				}
 				if(dataSourceNameFeature != null) {
 					String str = esDocumentMetaData.getStringValue(dataSourceNameFeature);
-					if (str != null) DocumentDetails.dataSourceName = str;
+					if (str != null) values.dataSourceName = str;
 				}
 				if(titleFeature != null) {
 					String str = esDocumentMetaData.getStringValue(titleFeature);
 					if (str != null) 
-						DocumentDetails.title = str;
+						values.title = str;
 					else {
-						if (!DocumentDetails.url.equals("unknown")) {
+						if (!values.url.equals(UNKNOWN)) {
 							try {
-								String uriStr = URLDecoder.decode(DocumentDetails.url, "UTF-8");
+								String uriStr = URLDecoder.decode(values.url, "UTF-8");
 								URI uri = new URI(uriStr);
 								String fileName = new File(uri.getPath()).getName();
 								if (fileName!=null)
 									if (fileName.length() != 0)
-										DocumentDetails.title=fileName;
+										values.title=fileName;
 							} catch (UnsupportedEncodingException e) {
 								UIMAFramework.getLogger().log(Level.WARNING,e.toString(),e);
 							} catch (URISyntaxException e) {
@@ -243,16 +370,37 @@ public class DocumentDetails {
 				}
 				if(docTypeFeature != null) {
 					String str = esDocumentMetaData.getStringValue(docTypeFeature);				
-					if (str != null) DocumentDetails.docType = str;
+					if (str != null) values.docType = str;
 				}
 				if(docDateFeature != null) {
 					String str = esDocumentMetaData.getStringValue(docDateFeature);	
 					try {
-						long ts = Long.parseLong(str)*1000L;
-						DocumentDetails.docDate = new java.util.Date(ts);
+						values.docDate = Long.parseLong(str)*1000L;
 					} catch (NumberFormatException e) {}
 				}
+				if (allMetaData) {
+					values.metaData = new LinkedHashMap<String, String>();
+					for (Feature ft : metaDataFeatures.all) {
+						String str = esDocumentMetaData.getFeatureValueAsString(ft);
+						if (str != null) values.metaData.put(ft.getShortName(), str);
+					}
+				}
 			}
 		}
 	}
+
+	/**
+	 * Values collected while extracting, defaulted to unknown.
+	 */
+	private static final class Values {
+		String id = UNKNOWN;
+		String language = UNKNOWN;
+		String url = UNKNOWN;
+		String title = UNKNOWN;
+		String dataSource = UNKNOWN;
+		String dataSourceName = UNKNOWN;
+		String docType = UNKNOWN;
+		long docDate = 0; // 01-01-1970
+		Map<String, String> metaData;
+	}
 }
@@ -0,0 +1,100 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+
+/**
+ * Feature handles used by DocumentDetails, resolved once per type system.
+ * <p>
+ * Whether the type system is from ICA (DocumentAnnotation has esDocumentMetaData)
+ * or uses SourceDocumentInformation is decided when the schema is built. Features
+ * are resolved on the actual type of the document annotation and of the document
+ * metadata, once per type, so extracting a document only reads values.
+ */
+final class DocumentDetailsSchema {
+	static final String SOURCE_DOCUMENT_INFORMATION_TYPE = "org.apache.uima.examples.SourceDocumentInformation";
+
+	private static final TypeSystemCache<DocumentDetailsSchema> schemas =
+			new TypeSystemCache<DocumentDetailsSchema>(ts -> new DocumentDetailsSchema(ts));
+
+	final boolean ica;
+	final Type sdiType;
+	private final ConcurrentHashMap<Type, DocumentFeatures> documentFeatures = new ConcurrentHashMap<Type, DocumentFeatures>();
+	private final ConcurrentHashMap<Type, MetaDataFeatures> metaDataFeatures = new ConcurrentHashMap<Type, MetaDataFeatures>();
+
+	private DocumentDetailsSchema(TypeSystem ts) {
+		this.ica = ts.getFeatureByFullName(CAS.TYPE_NAME_DOCUMENT_ANNOTATION + TypeSystem.FEATURE_SEPARATOR + "esDocumentMetaData") != null;
+		this.sdiType = ts.getType(SOURCE_DOCUMENT_INFORMATION_TYPE);
+	}
+
+	static DocumentDetailsSchema get(TypeSystem ts) {
+		return schemas.get(ts);
+	}
+
+	DocumentFeatures documentFeatures(Type documentAnnotType) {
+		DocumentFeatures features = documentFeatures.get(documentAnnotType);
+		if (features == null) {
+			features = new DocumentFeatures(documentAnnotType);
+			documentFeatures.putIfAbsent(documentAnnotType, features);
+		}
+		return features;
+	}
+
+	MetaDataFeatures metaDataFeatures(Type esDocumentMetaDataType) {
+		MetaDataFeatures features = metaDataFeatures.get(esDocumentMetaDataType);
+		if (features == null) {
+			features = new MetaDataFeatures(esDocumentMetaDataType);
+			metaDataFeatures.putIfAbsent(esDocumentMetaDataType, features);
+		}
+		return features;
+	}
+
+	/**
+	 * Features of a document annotation type.
+	 */
+	static final class DocumentFeatures {
+		final Feature language;
+		final Feature id;
+		final Feature esDocumentMetaData;
+
+		DocumentFeatures(Type type) {
+			language = type.getFeatureByBaseName("language");
+			id = type.getFeatureByBaseName("id");
+			esDocumentMetaData = type.getFeatureByBaseName("esDocumentMetaData");
+		}
+	}
+
+	/**
+	 * Features of an ICA document metadata type, the fixed ones and every primitive feature.
+	 */
+	static final class MetaDataFeatures {
+		final Feature url;
+		final Feature docType;
+		final Feature title;
+		final Feature dataSource;
+		final Feature dataSourceName;
+		final Feature date;
+		final Feature[] all;
+
+		MetaDataFeatures(Type type) {
+			url = type.getFeatureByBaseName("url");
+			docType = type.getFeatureByBaseName("docType");
+			title = type.getFeatureByBaseName("title");
+			dataSource = type.getFeatureByBaseName("dataSource");
+			dataSourceName = type.getFeatureByBaseName("dataSourceName");
+			date = type.getFeatureByBaseName("date");
+			List<Feature> primitives = new ArrayList<Feature>();
+			for (Feature ft : type.getFeatures()) {
+				if (ft.getRange().isPrimitive())
+					primitives.add(ft);
+			}
+			all = primitives.toArray(new Feature[primitives.size()]);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.mns.uima.utils;
+
+import java.util.HashMap;
+
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+
+/**
+ * State for one extraction call over one CAS view.
+ * <p>
+ * Holds the options and the values read once per call rather than per annotation.
+ * A context is used by a single thread for the duration of the call.
+ */
+final class ExtractionContext {
+	final ExtractionOptions options;
+	final String documentText;
+	final boolean reuseResults;
+	final StringInterner interner;
+	final AnnotationPredicate filter;
+	private HashMap<Object, PrimitiveAFS> reusable;
+	private HashMap<FeatureStructure, String> spanValues;
+
+	ExtractionContext(JCas jcas, ExtractionOptions options, boolean reuseResults) {
+		this.options = options;
+		this.documentText = options.isLazyCoveredText() ? jcas.getDocumentText() : null;
+		this.reuseResults = reuseResults;
+		this.interner = options.getInterner();
+		this.filter = options.getFilter();
+	}
+
+	/**
+	 * Get the instance reused for results of a plan or layout.
+	 * <p>
+	 * @param  key the plan or layout
+	 * @return the instance or null if there is none yet.
+	 */
+	PrimitiveAFS reused(Object key) {
+		return reusable == null ? null : reusable.get(key);
+	}
+
+	void reuse(Object key, PrimitiveAFS pafs) {
+		if (reusable == null)
+			reusable = new HashMap<Object, PrimitiveAFS>();
+		reusable.put(key, pafs);
+	}
+
+	/**
+	 * Get the value extracted for a Sentence or Paragraph feature.
+	 * <p>
+	 * The covered text of the sentence or paragraph, or its {@link SpanReference}
+	 * if the options ask for references. The value is computed once per call and
+	 * the same instance returned for every annotation referencing the same span.
+	 * <p>
+	 * @param  span the sentence or paragraph referenced
+	 * @return the value to store for the feature.
+	 */
+	String spanValue(AnnotationFS span) {
+		if (spanValues == null)
+			spanValues = new HashMap<FeatureStructure, String>();
+		String value = spanValues.get(span);
+		if (value == null) {
+			value = options.isSpanReferences() ? SpanReference.of(span).toString() : span.getCoveredText();
+			spanValues.put(span, value);
+		}
+		return value;
+	}
+}
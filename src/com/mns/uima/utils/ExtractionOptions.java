@@ -0,0 +1,182 @@
+package com.mns.uima.utils;
+
+/**
+ * Options controlling how CASUtils builds PrimitiveAFS results.
+ * <p>
+ * The defaults give the same results as the extraction methods without options.
+ * An options object is only read during extraction so one instance can be shared
+ * between threads once it has been set up.
+ */
+public class ExtractionOptions {
+	private boolean compact;
+	private boolean lazyCoveredText;
+	private boolean reuseResults;
+	private boolean spanReferences;
+	private StringInterner interner;
+	private boolean fullArrays;
+	private int spillThreshold;
+	private AnnotationPredicate filter;
+
+	/**
+	 * @return true if results are CompactPrimitiveAFS instances.
+	 */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * Build CompactPrimitiveAFS results holding typed feature values in slots
+	 * laid out by a schema shared by all annotations of a type, rather than a
+	 * map of strings per annotation.
+	 * <p>
+	 * @param compact true for compact results.
+	 */
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * @return true if covered text is computed on first use.
+	 */
+	public boolean isLazyCoveredText() {
+		return lazyCoveredText;
+	}
+
+	/**
+	 * Compute the covered text of each result from the document text and its
+	 * offsets when it is first asked for, rather than during extraction.
+	 * <p>
+	 * Until then each result references the document text. Use 
+	 * {@link PrimitiveAFS#detach()} or {@link CASUtils#detach(java.util.List)} to copy out 
+	 * the covered text and drop the reference, e.g. before results are kept 
+	 * beyond the life of the CAS.
+	 * <p>
+	 * @param lazyCoveredText true for lazy covered text.
+	 */
+	public void setLazyCoveredText(boolean lazyCoveredText) {
+		this.lazyCoveredText = lazyCoveredText;
+	}
+
+	/**
+	 * @return true if the visit methods reuse PrimitiveAFS instances.
+	 */
+	public boolean isReuseResults() {
+		return reuseResults;
+	}
+
+	/**
+	 * Have the CASUtils visit methods refill one PrimitiveAFS per annotation type
+	 * for each annotation instead of creating a new one, a flyweight that is only 
+	 * valid until the visitor returns. Ignored by the methods that return lists.
+	 * <p>
+	 * @param reuseResults true to reuse instances.
+	 */
+	public void setReuseResults(boolean reuseResults) {
+		this.reuseResults = reuseResults;
+	}
+
+	/**
+	 * @return true if Sentence and Paragraph features hold a SpanReference.
+	 */
+	public boolean isSpanReferences() {
+		return spanReferences;
+	}
+
+	/**
+	 * Store a reference to the sentence or paragraph a feature points at,
+	 * its address and offsets formatted as a {@link SpanReference}, rather
+	 * than its covered text. Use {@link SpanReference#parse(String)} to read
+	 * it back and {@link SpanReference#getCoveredText(String)} for the text.
+	 * <p>
+	 * @param spanReferences true to store references.
+	 */
+	public void setSpanReferences(boolean spanReferences) {
+		this.spanReferences = spanReferences;
+	}
+
+	/**
+	 * @return the interner for feature values or null if values are not interned.
+	 */
+	public StringInterner getInterner() {
+		return interner;
+	}
+
+	/**
+	 * Replace extracted string feature values by canonical instances held in an
+	 * interner, so results buffered from many documents share one instance of
+	 * each repeated value. Type and feature names are always shared by the
+	 * results of an extraction plan. Covered text is not interned.
+	 * <p>
+	 * @param interner the interner, typically one shared by all extractions, or null.
+	 */
+	public void setInterner(StringInterner interner) {
+		this.interner = interner;
+	}
+
+	/**
+	 * @return true if array features are extracted with all their elements.
+	 */
+	public boolean isFullArrays() {
+		return fullArrays;
+	}
+
+	/**
+	 * Extract every element of array features as well as the usual string value.
+	 * <p>
+	 * Primitive arrays are copied in bulk to int[], float[], String[] and so on,
+	 * FS arrays to a {@link SpanArray} of the offsets and covered text of their
+	 * elements, read with {@link PrimitiveAFS#getArrayValue(String)} and the typed
+	 * getters. With lazy covered text the SpanArray takes element text from the
+	 * document text too, apart from elements in a view with another document
+	 * text, whose covered text is read when they are extracted.
+	 * <p>
+	 * @param fullArrays true to extract full arrays.
+	 */
+	public void setFullArrays(boolean fullArrays) {
+		this.fullArrays = fullArrays;
+	}
+
+	/**
+	 * @return number of annotations a list holds on the heap, 0 if lists are never spilled.
+	 */
+	public int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Have the list and map methods return {@link SpillableAFSList}s that write annotations
+	 * to a temporary file once they hold more than a number of them, for documents with
+	 * too many annotations to keep on the heap. Close the lists when done with them.
+	 * Annotations are written in chunks of 4096, so a threshold below that spills
+	 * nothing until a list holds 4096.
+	 * <p>
+	 * Annotations read back from a spilled list keep their features and, with
+	 * {@link #setFullArrays(boolean)}, their array values, but are PrimitiveAFS
+	 * with map storage even when {@link #setCompact(boolean)} is set.
+	 * <p>
+	 * @param spillThreshold number of annotations held on the heap, 0 to never spill.
+	 */
+	public void setSpillThreshold(int spillThreshold) {
+		if (spillThreshold < 0)
+			throw new IllegalArgumentException("Invalid spill threshold " + spillThreshold);
+		this.spillThreshold = spillThreshold;
+	}
+
+	/**
+	 * @return the test annotations must pass to be extracted, or null.
+	 */
+	public AnnotationPredicate getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Only extract annotations passing a test, applied to each annotation before
+	 * its PrimitiveAFS is built so rejected annotations cost no more than the test.
+	 * See {@link AnnotationPredicates}.
+	 * <p>
+	 * @param filter the test, or null to extract every annotation.
+	 */
+	public void setFilter(AnnotationPredicate filter) {
+		this.filter = filter;
+	}
+}
@@ -0,0 +1,419 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.cas.ArrayFS;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Compiled plan for extracting a list of features from annotations of one type.
+ * <p>
+ * A plan is built once per type system, type name and feature list and cached
+ * across documents, keeping up to {@value #MAX_PLANS} per type system. Feature
+ * handles and the reader used for each feature are resolved once per concrete
+ * annotation type (the requested type or one of its subtypes), so extracting an
+ * annotation does no feature lookups and no type name comparisons. Plans are
+ * immutable apart from their layout cache and can be shared between threads.
+ */
+final class ExtractionPlan {
+	// each multi-type plan holds several of these, so more are kept than multi-type plans
+	private static final int MAX_PLANS = 256;
+	private static final TypeSystemCache<PlanCache<PlanKey, ExtractionPlan>> plans =
+			new TypeSystemCache<PlanCache<PlanKey, ExtractionPlan>>(ts -> new PlanCache<PlanKey, ExtractionPlan>(MAX_PLANS));
+
+	private final TypeSystem ts;
+	private final Type type;
+	private final String typeName;
+	private final String[] featureNames;
+	private final Type annotationType;
+	private final Type sentenceType;
+	private final Type paragraphType;
+	private final Type lemmaType;
+	private final Feature lemmaKey;
+	private final ConcurrentHashMap<Type, Layout> layouts = new ConcurrentHashMap<Type, Layout>();
+
+	private ExtractionPlan(TypeSystem ts, Type type, String typeName, List<String> featureNames) {
+		this.ts = ts;
+		this.type = type;
+		this.typeName = typeName;
+		this.featureNames = featureNames.toArray(new String[featureNames.size()]);
+		this.annotationType = ts.getType(CAS.TYPE_NAME_ANNOTATION);
+		this.sentenceType = ts.getType(CASUtils.SENTENCETYPE);
+		this.paragraphType = ts.getType(CASUtils.PARAGRAPHTYPE);
+		this.lemmaType = ts.getType(CASUtils.LEMMATYPE);
+		this.lemmaKey = lemmaType == null ? null : lemmaType.getFeatureByBaseName(CASUtils.LEMMAKEY);
+	}
+
+	/**
+	 * Get the plan for a type and list of features, compiling and caching it if needed.
+	 * <p>
+	 * @param  ts Type system the type should exist in
+	 * @param  typeName Full type name to extract
+	 * @param  featureNames List of feature base names to be extracted.
+	 * @return the plan or null if the type does not exist in the type system.
+	 */
+	static ExtractionPlan get(TypeSystem ts, String typeName, List<String> featureNames) {
+		PlanCache<PlanKey, ExtractionPlan> tsPlans = plans.get(ts);
+		ExtractionPlan plan = tsPlans.get(new PlanKey(typeName, featureNames));
+		if (plan == null) {
+			Type type = ts.getType(typeName);
+			if (type == null)
+				return null;
+			List<String> copy = new ArrayList<String>(featureNames);
+			plan = tsPlans.add(new PlanKey(typeName, copy), new ExtractionPlan(ts, type, typeName, copy));
+		}
+		return plan;
+	}
+
+	Type getType() {
+		return type;
+	}
+
+	String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * Get the resolved layout for a concrete annotation type.
+	 * <p>
+	 * @param  t the type of the annotation being extracted, the plan's type or a subtype of it.
+	 * @return layout of readers, one per requested feature.
+	 */
+	Layout layout(Type t) {
+		Layout layout = layouts.get(t);
+		if (layout == null) {
+			FeatureReader[] readers = compileReaders(t);
+			byte[] kinds = new byte[readers.length];
+			for (int i = 0; i < readers.length; i++)
+				kinds[i] = readers[i].kind;
+			int missing = 0;
+			List<Integer> arrayIndexes = new ArrayList<Integer>();
+			for (int i = 0; i < featureNames.length; i++) {
+				Feature ft = t.getFeatureByBaseName(featureNames[i]);
+				if (ft == null)
+					missing++;
+				else if (ft.getRange().isArray())
+					arrayIndexes.add(i);
+			}
+			Feature[] arrayFeatures = null;
+			int[] arrayFeatureIndexes = null;
+			if (!arrayIndexes.isEmpty()) {
+				arrayFeatures = new Feature[arrayIndexes.size()];
+				arrayFeatureIndexes = new int[arrayIndexes.size()];
+				for (int i = 0; i < arrayFeatures.length; i++) {
+					arrayFeatureIndexes[i] = arrayIndexes.get(i);
+					arrayFeatures[i] = t.getFeatureByBaseName(featureNames[arrayFeatureIndexes[i]]);
+				}
+			}
+			layout = new Layout(t, readers, new PrimitiveAFSSchema(typeName, featureNames, kinds), missing,
+					arrayFeatures, arrayFeatureIndexes);
+			Layout existing = layouts.putIfAbsent(t, layout);
+			if (existing != null)
+				layout = existing;
+		}
+		return layout;
+	}
+
+	/**
+	 * Build a PrimitiveAFS from an annotation using a layout for its type.
+	 * <p>
+	 * @param  afs annotation to extract
+	 * @param  layout layout for the annotation's type
+	 * @param  context state of the extraction call
+	 * @return PrimitiveAFS holding the requested features.
+	 */
+	PrimitiveAFS extract(AnnotationFS afs, Layout layout, ExtractionContext context) {
+		if (context.options.isCompact())
+			return extractCompact(afs, layout, context);
+		PrimitiveAFS pafs = context.reuseResults ? context.reused(this) : null;
+		boolean reused = pafs != null;
+		if (!reused) {
+			pafs = new PrimitiveAFS();
+			if (context.reuseResults)
+				context.reuse(this, pafs);
+		}
+		pafs.setBegin(afs.getBegin());
+		pafs.setEnd(afs.getEnd());
+		setCoveredText(afs, pafs, context);
+		pafs.setTypeStr(typeName);
+		HashMap<String, String> features;
+		if (reused) {
+			features = pafs.getFeatures();
+			features.clear();
+		} else
+			features = new HashMap<String, String>();
+		FeatureReader[] readers = layout.readers;
+		for (int i = 0; i < readers.length; i++) {
+			String str;
+			try {
+				str = readers[i].read(afs, context);
+			}
+			catch (Exception e) {
+				str = "";
+			}
+			if (str != CompactPrimitiveAFS.ABSENT)
+				features.put(featureNames[i], intern(str, context));
+		}
+		pafs.setFeatures(features);
+		if (reused)
+			pafs.clearArrayValues();
+		setArrayValues(afs, pafs, layout, context);
+		return pafs;
+	}
+
+	private PrimitiveAFS extractCompact(AnnotationFS afs, Layout layout, ExtractionContext context) {
+		CompactPrimitiveAFS pafs = context.reuseResults ? (CompactPrimitiveAFS) context.reused(layout) : null;
+		if (pafs == null || pafs.getSchema() == null) {
+			pafs = new CompactPrimitiveAFS(layout.schema);
+			if (context.reuseResults)
+				context.reuse(layout, pafs);
+		} else
+			pafs.clearArrayValues();
+		pafs.setSpan(afs.getBegin(), afs.getEnd());
+		setCoveredText(afs, pafs, context);
+		pafs.setTypeStr(typeName);
+		FeatureReader[] readers = layout.readers;
+		for (int i = 0; i < readers.length; i++) {
+			if (readers[i].kind != PrimitiveAFSSchema.STRING) {
+				pafs.setValueBits(i, ((PrimitiveReader) readers[i]).readBits(afs));
+			} else {
+				String str;
+				try {
+					str = readers[i].read(afs, context);
+				}
+				catch (Exception e) {
+					str = "";
+				}
+				pafs.setStringValue(i, intern(str, context));
+			}
+		}
+		setArrayValues(afs, pafs, layout, context);
+		return pafs;
+	}
+
+	private void setArrayValues(AnnotationFS afs, PrimitiveAFS pafs, Layout layout, ExtractionContext context) {
+		if (layout.arrayFeatures == null || !context.options.isFullArrays())
+			return;
+		for (int i = 0; i < layout.arrayFeatures.length; i++) {
+			Object value = ArrayValues.copy(afs.getFeatureValue(layout.arrayFeatures[i]), context.documentText);
+			pafs.setArrayValue(featureNames[layout.arrayFeatureIndexes[i]], value);
+		}
+	}
+
+	/**
+	 * Intern a feature value, leaving the ABSENT marker as it is.
+	 */
+	private static String intern(String str, ExtractionContext context) {
+		if (context.interner == null || str == CompactPrimitiveAFS.ABSENT)
+			return str;
+		return context.interner.intern(str);
+	}
+
+	private static void setCoveredText(AnnotationFS afs, PrimitiveAFS pafs, ExtractionContext context) {
+		if (context.options.isLazyCoveredText())
+			pafs.setDocumentText(context.documentText);
+		else
+			pafs.setCoveredText(afs.getCoveredText());
+	}
+
+	private FeatureReader[] compileReaders(Type t) {
+		FeatureReader[] readers = new FeatureReader[featureNames.length];
+		for (int i = 0; i < featureNames.length; i++) {
+			readers[i] = compileReader(t.getFeatureByBaseName(featureNames[i]));
+		}
+		return readers;
+	}
+
+	private FeatureReader compileReader(Feature ft) {
+		if (ft == null)
+			return FeatureReader.EMPTY;
+		Type range = ft.getRange();
+		if (range.isPrimitive())
+			return new PrimitiveReader(ft, PrimitiveAFSSchema.kindOf(range));
+		if (range.isArray()) {
+			if (!range.getComponentType().isPrimitive()) // FSArray, typed or not
+				return new FirstElementReader(ft, ts, annotationType);
+			return FeatureReader.EMPTY; // only FS arrays have annotation elements
+		}
+		return new ReferenceReader(ft, sentenceType, paragraphType, lemmaType, lemmaKey);
+	}
+
+	/**
+	 * Readers resolved for one concrete annotation type and the schema of their values.
+	 * <p>
+	 * Missing is the number of requested features the type does not have. Array
+	 * features are the requested features with an array range, by index into the
+	 * requested features, or null if there are none.
+	 */
+	static final class Layout {
+		final Type type;
+		final FeatureReader[] readers;
+		final PrimitiveAFSSchema schema;
+		final int missing;
+		final Feature[] arrayFeatures;
+		final int[] arrayFeatureIndexes;
+
+		Layout(Type type, FeatureReader[] readers, PrimitiveAFSSchema schema, int missing,
+				Feature[] arrayFeatures, int[] arrayFeatureIndexes) {
+			this.type = type;
+			this.readers = readers;
+			this.schema = schema;
+			this.missing = missing;
+			this.arrayFeatures = arrayFeatures;
+			this.arrayFeatureIndexes = arrayFeatureIndexes;
+		}
+	}
+
+	/**
+	 * Reads one feature value.
+	 * <p>
+	 * Every reader returns the string form of the value, or ABSENT when the 
+	 * feature is not stored at all. Only primitive readers have a kind other
+	 * than STRING, and they also return the raw value bits for compact storage.
+	 */
+	abstract static class FeatureReader {
+		/** Feature missing from the type, always an empty value. */
+		static final FeatureReader EMPTY = new FeatureReader(PrimitiveAFSSchema.STRING) {
+			@Override
+			String read(AnnotationFS afs, ExtractionContext context) {
+				return "";
+			}
+		};
+
+		final byte kind;
+
+		FeatureReader(byte kind) {
+			this.kind = kind;
+		}
+
+		abstract String read(AnnotationFS afs, ExtractionContext context);
+	}
+
+	private static final class PrimitiveReader extends FeatureReader {
+		private final Feature ft;
+
+		PrimitiveReader(Feature ft, byte kind) {
+			super(kind);
+			this.ft = ft;
+		}
+
+		@Override
+		String read(AnnotationFS afs, ExtractionContext context) {
+			return afs.getFeatureValueAsString(ft);
+		}
+
+		/**
+		 * @return the raw bits of a numeric or boolean value.
+		 */
+		long readBits(AnnotationFS afs) {
+			switch (kind) {
+			case PrimitiveAFSSchema.BOOLEAN:
+				return afs.getBooleanValue(ft) ? 1 : 0;
+			case PrimitiveAFSSchema.BYTE:
+				return afs.getByteValue(ft);
+			case PrimitiveAFSSchema.SHORT:
+				return afs.getShortValue(ft);
+			case PrimitiveAFSSchema.INT:
+				return afs.getIntValue(ft);
+			case PrimitiveAFSSchema.LONG:
+				return afs.getLongValue(ft);
+			case PrimitiveAFSSchema.FLOAT:
+				return Float.floatToRawIntBits(afs.getFloatValue(ft));
+			case PrimitiveAFSSchema.DOUBLE:
+				return Double.doubleToRawLongBits(afs.getDoubleValue(ft));
+			default:
+				throw new IllegalStateException("No value bits for feature " + ft.getName() + " of kind " + kind);
+			}
+		}
+	}
+
+	private static final class FirstElementReader extends FeatureReader {
+		private final Feature ft;
+		private final TypeSystem ts;
+		private final Type annotationType;
+
+		FirstElementReader(Feature ft, TypeSystem ts, Type annotationType) {
+			super(PrimitiveAFSSchema.STRING);
+			this.ft = ft;
+			this.ts = ts;
+			this.annotationType = annotationType;
+		}
+
+		@Override
+		String read(AnnotationFS afs, ExtractionContext context) {
+			// try the covered text on the first element
+			FeatureStructure fs = ((ArrayFS) afs.getFeatureValue(ft)).get(0);
+			if (fs == null)
+				return CompactPrimitiveAFS.ABSENT;
+			if (ts.subsumes(annotationType, fs.getType())) // it's an annotation
+				return ((AnnotationFS) fs).getCoveredText();
+			return "";
+		}
+	}
+
+	private static final class ReferenceReader extends FeatureReader {
+		private final Feature ft;
+		private final Type sentenceType;
+		private final Type paragraphType;
+		private final Type lemmaType;
+		private final Feature lemmaKey;
+
+		ReferenceReader(Feature ft, Type sentenceType, Type paragraphType, Type lemmaType, Feature lemmaKey) {
+			super(PrimitiveAFSSchema.STRING);
+			this.ft = ft;
+			this.sentenceType = sentenceType;
+			this.paragraphType = paragraphType;
+			this.lemmaType = lemmaType;
+			this.lemmaKey = lemmaKey;
+		}
+
+		@Override
+		String read(AnnotationFS afs, ExtractionContext context) {
+			FeatureStructure fs = afs.getFeatureValue(ft);
+			Type t = fs.getType();
+			if (t == sentenceType || t == paragraphType)
+				return context.spanValue((AnnotationFS) fs);
+			if (t == lemmaType && lemmaKey != null)
+				return fs.getStringValue(lemmaKey);
+			return CompactPrimitiveAFS.ABSENT;
+		}
+	}
+
+	/**
+	 * Type name and feature list, borrowed from the caller for a lookup and copied to be stored.
+	 */
+	private static final class PlanKey {
+		final String typeName;
+		final List<String> featureNames;
+		final int hash;
+
+		PlanKey(String typeName, List<String> featureNames) {
+			this.typeName = typeName;
+			this.featureNames = featureNames;
+			this.hash = 31 * typeName.hashCode() + featureNames.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof PlanKey))
+				return false;
+			PlanKey other = (PlanKey) o;
+			return typeName.equals(other.typeName) && featureNames.equals(other.featureNames);
+		}
+	}
+}
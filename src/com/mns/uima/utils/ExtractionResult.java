@@ -0,0 +1,113 @@
+package com.mns.uima.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * What was extracted from one CAS of a batch, see {@link BatchExtractor}.
+ * <p>
+ * When the spec's options have a spill threshold the annotation lists are
+ * {@link SpillableAFSList}s, close the result to delete their files.
+ */
+public final class ExtractionResult implements AutoCloseable {
+	private final int index;
+	private final JCas jcas;
+	private final Map<String, List<PrimitiveAFS>> annotations;
+	private final MetaFields metaFields;
+	private final DocumentDetails documentDetails;
+	private final RuntimeException failure;
+
+	ExtractionResult(int index, JCas jcas, Map<String, List<PrimitiveAFS>> annotations,
+			MetaFields metaFields, DocumentDetails documentDetails, RuntimeException failure) {
+		this.index = index;
+		this.jcas = jcas;
+		this.annotations = annotations;
+		this.metaFields = metaFields;
+		this.documentDetails = documentDetails;
+		this.failure = failure;
+	}
+
+	/**
+	 * @return position of the CAS in the batch, counting from 0.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the CAS extracted from, e.g. to release it to a pool.
+	 */
+	public JCas getJCas() {
+		return jcas;
+	}
+
+	/**
+	 * @return type names mapped to the extracted annotations, empty if extraction failed.
+	 */
+	public Map<String, List<PrimitiveAFS>> getAnnotations() {
+		return Collections.unmodifiableMap(annotations);
+	}
+
+	/**
+	 * @param  typeName Full type name
+	 * @return the extracted annotations of a type, empty if the type was not extracted.
+	 */
+	public List<PrimitiveAFS> getAnnotations(String typeName) {
+		List<PrimitiveAFS> list = annotations.get(typeName);
+		return list == null ? Collections.<PrimitiveAFS>emptyList() : list;
+	}
+
+	/**
+	 * @return the meta fields or null if not extracted.
+	 */
+	public MetaFields getMetaFields() {
+		return metaFields;
+	}
+
+	/**
+	 * @return the document details or null if not extracted.
+	 */
+	public DocumentDetails getDocumentDetails() {
+		return documentDetails;
+	}
+
+	/**
+	 * @return the exception that stopped extraction from this CAS, or null.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Close any annotation lists that hold a file, after which they are empty.
+	 * <p>
+	 * @throws UncheckedIOException if a file cannot be closed, the other lists are still closed.
+	 */
+	@Override
+	public void close() {
+		close(annotations.values());
+	}
+
+	static void close(Iterable<List<PrimitiveAFS>> lists) {
+		IOException failure = null;
+		for (List<PrimitiveAFS> list : lists) {
+			if (list instanceof SpillableAFSList) {
+				try {
+					((SpillableAFSList) list).close();
+				} catch (IOException e) {
+					if (failure == null)
+						failure = e;
+					else
+						failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null)
+			throw new UncheckedIOException(failure);
+	}
+}
@@ -0,0 +1,82 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What to extract from each CAS of a batch, see {@link BatchExtractor}.
+ * <p>
+ * Annotation types with the feature base names to extract, whether to read
+ * MetaFields and DocumentDetails, and the options used to build the results.
+ * A spec is copied when a BatchExtractor is created, changing it afterwards
+ * does not affect that extractor.
+ */
+public class ExtractionSpec {
+	private final LinkedHashMap<String, List<String>> typeFeatures = new LinkedHashMap<String, List<String>>();
+	private boolean metaFields;
+	private boolean documentDetails;
+	private ExtractionOptions options = new ExtractionOptions();
+
+	public ExtractionSpec() {
+	}
+
+	ExtractionSpec(ExtractionSpec spec) {
+		typeFeatures.putAll(spec.typeFeatures);
+		metaFields = spec.metaFields;
+		documentDetails = spec.documentDetails;
+		options = spec.options;
+	}
+
+	/**
+	 * Add an annotation type to extract.
+	 * <p>
+	 * @param typeName Full type name to extract
+	 * @param featureNames List of feature base names to be extracted.
+	 */
+	public void addType(String typeName, List<String> featureNames) {
+		typeFeatures.put(typeName, Collections.unmodifiableList(new ArrayList<String>(featureNames)));
+	}
+
+	/**
+	 * @return type names mapped to the feature base names to be extracted.
+	 */
+	public Map<String, List<String>> getTypeFeatures() {
+		return Collections.unmodifiableMap(typeFeatures);
+	}
+
+	/**
+	 * @return true if MetaFields and ICMMetaFields are extracted.
+	 */
+	public boolean isMetaFields() {
+		return metaFields;
+	}
+
+	public void setMetaFields(boolean metaFields) {
+		this.metaFields = metaFields;
+	}
+
+	/**
+	 * @return true if DocumentDetails are extracted.
+	 */
+	public boolean isDocumentDetails() {
+		return documentDetails;
+	}
+
+	public void setDocumentDetails(boolean documentDetails) {
+		this.documentDetails = documentDetails;
+	}
+
+	public ExtractionOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * @param options used to build the PrimitiveAFS results, shared by every worker.
+	 */
+	public void setOptions(ExtractionOptions options) {
+		this.options = options;
+	}
+}
@@ -0,0 +1,69 @@
+package com.mns.uima.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+
+/**
+ * Feature lookup by type and base name that returns null rather than throwing.
+ * <p>
+ * Results are cached per type system, type and name, including misses, so looking
+ * up a feature a type does not have costs a map probe. The names missed come from
+ * callers, so only the first {@value #MAX_MISSES} per type are cached, later ones
+ * are looked up on the type each time. Unlike
+ * {@link CASUtils#initFeature(Type, String)} no exception is built for a miss,
+ * which matters when one feature list is used across many subtypes.
+ */
+final class FeatureLookup {
+	private static final Object NONE = new Object();
+	private static final int MAX_MISSES = 64;
+
+	private static final TypeSystemCache<ConcurrentHashMap<Type, ConcurrentHashMap<String, Object>>> features =
+			new TypeSystemCache<ConcurrentHashMap<Type, ConcurrentHashMap<String, Object>>>(ts -> new ConcurrentHashMap<Type, ConcurrentHashMap<String, Object>>());
+
+	private FeatureLookup() {
+	}
+
+	/**
+	 * Get a feature of a type.
+	 * <p>
+	 * @param  ts Type system of the type
+	 * @param  type Type to look the feature up on
+	 * @param  featureName Base name of the feature
+	 * @return the feature or null if the type has no feature of that name.
+	 */
+	static Feature get(TypeSystem ts, Type type, String featureName) {
+		ConcurrentHashMap<Type, ConcurrentHashMap<String, Object>> tsFeatures = features.get(ts);
+		ConcurrentHashMap<String, Object> typeFeatures = tsFeatures.get(type);
+		if (typeFeatures == null) {
+			typeFeatures = new ConcurrentHashMap<String, Object>();
+			ConcurrentHashMap<String, Object> existing = tsFeatures.putIfAbsent(type, typeFeatures);
+			if (existing != null)
+				typeFeatures = existing;
+		}
+		Object feature = typeFeatures.get(featureName);
+		if (feature == null) {
+			feature = type.getFeatureByBaseName(featureName);
+			if (feature != null)
+				typeFeatures.putIfAbsent(featureName, feature);
+			else if (typeFeatures.size() < type.getNumberOfFeatures() + MAX_MISSES)
+				typeFeatures.putIfAbsent(featureName, NONE);
+			return (Feature) feature;
+		}
+		return feature == NONE ? null : (Feature) feature;
+	}
+
+	/**
+	 * Get a feature of a feature structure's type.
+	 * <p>
+	 * @param  fs Feature structure
+	 * @param  featureName Base name of the feature
+	 * @return the feature or null if the type has no feature of that name.
+	 */
+	static Feature get(FeatureStructure fs, String featureName) {
+		return get(fs.getCAS().getTypeSystem(), fs.getType(), featureName);
+	}
+}
@@ -0,0 +1,337 @@
+package com.mns.uima.utils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+
+/**
+ * Writes values of one primitive feature, resolved once for a type and feature name.
+ * <p>
+ * A writer is typically created when an annotator initialises and reused for every
+ * write, so no feature lookup or range check by type name is done per value. Each
+ * setter only writes if the value type matches the feature range and returns false
+ * otherwise. Bulk forms apply one value, or one value per feature structure, to a
+ * list of feature structures. Feature structures must be of the writer's type or
+ * a subtype. Writers are immutable and can be shared between threads.
+ */
+public final class FeatureWriter {
+	private static final CASUtilsMetrics metrics = CASUtilsMetrics.get();
+	private static final FeatureWriter NONE = new FeatureWriter(null, PrimitiveAFSSchema.STRING);
+	private static final FeatureWriter MISSING = new FeatureWriter(null, PrimitiveAFSSchema.STRING);
+	private static final int MAX_MISSES = 64;
+
+	private static final TypeSystemCache<ConcurrentHashMap<Type, ConcurrentHashMap<String, FeatureWriter>>> writers =
+			new TypeSystemCache<ConcurrentHashMap<Type, ConcurrentHashMap<String, FeatureWriter>>>(ts -> new ConcurrentHashMap<Type, ConcurrentHashMap<String, FeatureWriter>>());
+
+	private final Feature feature;
+	private final byte kind;
+
+	private FeatureWriter(Feature feature, byte kind) {
+		this.feature = feature;
+		this.kind = kind;
+	}
+
+	/**
+	 * Create a writer for a primitive feature of a type.
+	 * <p>
+	 * @param  type Type that the feature belongs to
+	 * @param  featureName Base name of the feature
+	 * @return the writer or null if the type has no primitive feature of that name.
+	 */
+	public static FeatureWriter create(Type type, String featureName) {
+		return create(type.getFeatureByBaseName(featureName));
+	}
+
+	private static FeatureWriter create(Feature ft) {
+		if (ft == null || !ft.getRange().isPrimitive())
+			return null;
+		return new FeatureWriter(ft, PrimitiveAFSSchema.kindOf(ft.getRange()));
+	}
+
+	/**
+	 * Create a writer for a primitive feature of a type.
+	 * <p>
+	 * @param  ts Type system the type should exist in
+	 * @param  typeName Full type name
+	 * @param  featureName Base name of the feature
+	 * @return the writer or null if the type or primitive feature does not exist.
+	 */
+	public static FeatureWriter create(TypeSystem ts, String typeName, String featureName) {
+		Type type = ts.getType(typeName);
+		return type == null ? null : create(type, featureName);
+	}
+
+	/**
+	 * Get a cached writer for a feature of a feature structure's type.
+	 * <p>
+	 * Used by the CASUtils setters. Misses are cached too, up to {@value #MAX_MISSES}
+	 * names per type as the names come from callers, and a feature the type does
+	 * not have is recorded as a feature miss.
+	 * <p>
+	 * @return the writer or null if the type has no primitive feature of that name.
+	 */
+	static FeatureWriter get(FeatureStructure fs, String featureName) {
+		Type type = fs.getType();
+		TypeSystem ts = fs.getCAS().getTypeSystem();
+		ConcurrentHashMap<Type, ConcurrentHashMap<String, FeatureWriter>> tsWriters = writers.get(ts);
+		ConcurrentHashMap<String, FeatureWriter> typeWriters = tsWriters.get(type);
+		if (typeWriters == null) {
+			typeWriters = new ConcurrentHashMap<String, FeatureWriter>();
+			ConcurrentHashMap<String, FeatureWriter> existing = tsWriters.putIfAbsent(type, typeWriters);
+			if (existing != null)
+				typeWriters = existing;
+		}
+		FeatureWriter writer = typeWriters.get(featureName);
+		if (writer == null) {
+			Feature ft = FeatureLookup.get(ts, type, featureName);
+			writer = ft == null ? MISSING : create(ft);
+			if (writer == null)
+				writer = NONE;
+			if (writer != MISSING || typeWriters.size() < type.getNumberOfFeatures() + MAX_MISSES)
+				typeWriters.putIfAbsent(featureName, writer);
+		}
+		if (writer == MISSING) {
+			metrics.featureNotFound(type, featureName);
+			return null;
+		}
+		return writer == NONE ? null : writer;
+	}
+
+	/**
+	 * @return the feature written.
+	 */
+	public Feature getFeature() {
+		return feature;
+	}
+
+	/**
+	 * Set the value of the feature.
+	 * <p>
+	 * @param  fs feature structure to write to
+	 * @param  value to set
+	 * @return false if the feature is not a string, nothing is written.
+	 */
+	public boolean setStringValue(FeatureStructure fs, String value) {
+		if (kind != PrimitiveAFSSchema.STRING)
+			return false;
+		fs.setStringValue(feature, value);
+		return true;
+	}
+
+	public boolean setIntValue(FeatureStructure fs, int value) {
+		if (kind != PrimitiveAFSSchema.INT)
+			return false;
+		fs.setIntValue(feature, value);
+		return true;
+	}
+
+	public boolean setLongValue(FeatureStructure fs, long value) {
+		if (kind != PrimitiveAFSSchema.LONG)
+			return false;
+		fs.setLongValue(feature, value);
+		return true;
+	}
+
+	public boolean setFloatValue(FeatureStructure fs, float value) {
+		if (kind != PrimitiveAFSSchema.FLOAT)
+			return false;
+		fs.setFloatValue(feature, value);
+		return true;
+	}
+
+	public boolean setDoubleValue(FeatureStructure fs, double value) {
+		if (kind != PrimitiveAFSSchema.DOUBLE)
+			return false;
+		fs.setDoubleValue(feature, value);
+		return true;
+	}
+
+	public boolean setShortValue(FeatureStructure fs, short value) {
+		if (kind != PrimitiveAFSSchema.SHORT)
+			return false;
+		fs.setShortValue(feature, value);
+		return true;
+	}
+
+	public boolean setByteValue(FeatureStructure fs, byte value) {
+		if (kind != PrimitiveAFSSchema.BYTE)
+			return false;
+		fs.setByteValue(feature, value);
+		return true;
+	}
+
+	public boolean setBooleanValue(FeatureStructure fs, boolean value) {
+		if (kind != PrimitiveAFSSchema.BOOLEAN)
+			return false;
+		fs.setBooleanValue(feature, value);
+		return true;
+	}
+
+	/**
+	 * Set the same value on every feature structure in a list.
+	 * <p>
+	 * @param  fss feature structures to write to
+	 * @param  value to set
+	 * @return false if the feature is not a string, nothing is written.
+	 */
+	public boolean setStringValues(List<? extends FeatureStructure> fss, String value) {
+		if (kind != PrimitiveAFSSchema.STRING)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setStringValue(feature, value);
+		return true;
+	}
+
+	/**
+	 * Set one value from a column on each feature structure in a list.
+	 * <p>
+	 * @param  fss feature structures to write to
+	 * @param  values to set, values[i] on fss.get(i)
+	 * @return false if the feature is not a string, nothing is written.
+	 * @throws IllegalArgumentException if there are not as many values as feature structures.
+	 */
+	public boolean setStringValues(List<? extends FeatureStructure> fss, String[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.STRING)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setStringValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setIntValues(List<? extends FeatureStructure> fss, int value) {
+		if (kind != PrimitiveAFSSchema.INT)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setIntValue(feature, value);
+		return true;
+	}
+
+	public boolean setIntValues(List<? extends FeatureStructure> fss, int[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.INT)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setIntValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setLongValues(List<? extends FeatureStructure> fss, long value) {
+		if (kind != PrimitiveAFSSchema.LONG)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setLongValue(feature, value);
+		return true;
+	}
+
+	public boolean setLongValues(List<? extends FeatureStructure> fss, long[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.LONG)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setLongValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setFloatValues(List<? extends FeatureStructure> fss, float value) {
+		if (kind != PrimitiveAFSSchema.FLOAT)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setFloatValue(feature, value);
+		return true;
+	}
+
+	public boolean setFloatValues(List<? extends FeatureStructure> fss, float[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.FLOAT)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setFloatValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setDoubleValues(List<? extends FeatureStructure> fss, double value) {
+		if (kind != PrimitiveAFSSchema.DOUBLE)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setDoubleValue(feature, value);
+		return true;
+	}
+
+	public boolean setDoubleValues(List<? extends FeatureStructure> fss, double[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.DOUBLE)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setDoubleValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setShortValues(List<? extends FeatureStructure> fss, short value) {
+		if (kind != PrimitiveAFSSchema.SHORT)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setShortValue(feature, value);
+		return true;
+	}
+
+	public boolean setShortValues(List<? extends FeatureStructure> fss, short[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.SHORT)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setShortValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setByteValues(List<? extends FeatureStructure> fss, byte value) {
+		if (kind != PrimitiveAFSSchema.BYTE)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setByteValue(feature, value);
+		return true;
+	}
+
+	public boolean setByteValues(List<? extends FeatureStructure> fss, byte[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.BYTE)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setByteValue(feature, values[i++]);
+		return true;
+	}
+
+	public boolean setBooleanValues(List<? extends FeatureStructure> fss, boolean value) {
+		if (kind != PrimitiveAFSSchema.BOOLEAN)
+			return false;
+		for (FeatureStructure fs : fss)
+			fs.setBooleanValue(feature, value);
+		return true;
+	}
+
+	public boolean setBooleanValues(List<? extends FeatureStructure> fss, boolean[] values) {
+		checkColumn(fss, values.length);
+		if (kind != PrimitiveAFSSchema.BOOLEAN)
+			return false;
+		int i = 0;
+		for (FeatureStructure fs : fss)
+			fs.setBooleanValue(feature, values[i++]);
+		return true;
+	}
+
+	private static void checkColumn(List<? extends FeatureStructure> fss, int length) {
+		if (fss.size() != length)
+			throw new IllegalArgumentException("Expected " + fss.size() + " values but got " + length);
+	}
+}
@@ -0,0 +1,76 @@
+package com.mns.uima.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of durations with power of two buckets.
+ * <p>
+ * Bucket i counts durations below 2^i nanoseconds that are not in a lower bucket,
+ * so percentiles are accurate to within a factor of two which is enough to see
+ * where time goes. Recording is a few adds and safe from any thread.
+ */
+final class LatencyHistogram {
+	private static final int BUCKETS = 64;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder totalNanos = new LongAdder();
+
+	LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+		totalNanos.add(nanos);
+	}
+
+	long count() {
+		long count = 0;
+		for (LongAdder bucket : buckets)
+			count += bucket.sum();
+		return count;
+	}
+
+	long totalNanos() {
+		return totalNanos.sum();
+	}
+
+	double meanMicros() {
+		long count = count();
+		return count == 0 ? 0 : totalNanos() / 1000.0 / count;
+	}
+
+	/**
+	 * Get an upper bound on a percentile.
+	 * <p>
+	 * @param  percentile between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile in microseconds, 0 if nothing is recorded.
+	 */
+	double percentileMicros(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0)
+				return Math.pow(2, i) / 1000.0;
+		}
+		return Math.pow(2, BUCKETS - 1) / 1000.0;
+	}
+
+	void reset() {
+		for (LongAdder bucket : buckets)
+			bucket.reset();
+		totalNanos.reset();
+	}
+}
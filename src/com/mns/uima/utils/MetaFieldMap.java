@@ -0,0 +1,104 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Name value pairs read from MetaFields, allowing several values per name.
+ * <p>
+ * Backed by an unsynchronized hash map, a single value is held as is and only
+ * names with several values use a list. Values are kept in the order read.
+ */
+public final class MetaFieldMap {
+	private final HashMap<String, Object> fields = new HashMap<String, Object>();
+	private int valueCount;
+
+	@SuppressWarnings("unchecked")
+	void add(String name, String value) {
+		Object current = fields.get(name);
+		if (current == null) {
+			fields.put(name, value);
+		} else if (current instanceof String) {
+			List<String> values = new ArrayList<String>(2);
+			values.add((String) current);
+			values.add(value);
+			fields.put(name, values);
+		} else {
+			((List<String>) current).add(value);
+		}
+		valueCount++;
+	}
+
+	/**
+	 * Get the value of a name, the last one read if there are several.
+	 * <p>
+	 * @param  name meta field name
+	 * @return the value or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public String get(String name) {
+		Object current = fields.get(name);
+		if (current == null || current instanceof String)
+			return (String) current;
+		List<String> values = (List<String>) current;
+		return values.get(values.size() - 1);
+	}
+
+	/**
+	 * Get all values of a name.
+	 * <p>
+	 * @param  name meta field name
+	 * @return the values in the order read, empty if there are none.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getAll(String name) {
+		Object current = fields.get(name);
+		if (current == null)
+			return Collections.emptyList();
+		if (current instanceof String)
+			return Collections.singletonList((String) current);
+		return Collections.unmodifiableList((List<String>) current);
+	}
+
+	public boolean contains(String name) {
+		return fields.containsKey(name);
+	}
+
+	/**
+	 * @return the names that have values.
+	 */
+	public Set<String> names() {
+		return Collections.unmodifiableSet(fields.keySet());
+	}
+
+	/**
+	 * @return number of names.
+	 */
+	public int size() {
+		return fields.size();
+	}
+
+	/**
+	 * @return number of values over all names.
+	 */
+	public int valueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * Copy to properties holding the last value of each name.
+	 * <p>
+	 * @return properties representing name value pairs
+	 */
+	public Properties toProperties() {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Object> entry : fields.entrySet())
+			properties.put(entry.getKey(), get(entry.getKey()));
+		return properties;
+	}
+}
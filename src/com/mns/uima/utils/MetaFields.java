@@ -0,0 +1,125 @@
+package com.mns.uima.utils;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+
+/**
+ * ICA MetaFields and Content Classification ICMMetaFields read from a CAS together.
+ * <p>
+ * MetaFields are name value pairs typically added by crawlers or crawler plugins,
+ * ICMMetaFields are added by Content Classification. Both are read in one call
+ * with type and feature handles resolved once per type system. As with
+ * {@link CASUtils#extractICAMetaFields(CAS)} only names and values that are not
+ * empty are kept and nothing is read unless the type system is from ICA.
+ */
+public final class MetaFields {
+	static final String METAFIELD_TYPE = "com.ibm.es.oze.MetaField";
+	static final String ICM_METAFIELD_TYPE = "com.ibm.es.oze.ICMMetaField";
+
+	private static final TypeSystemCache<Schema> schemas = new TypeSystemCache<Schema>(ts -> new Schema(ts));
+
+	private final MetaFieldMap icaFields;
+	private final MetaFieldMap icmFields;
+
+	private MetaFields(MetaFieldMap icaFields, MetaFieldMap icmFields) {
+		this.icaFields = icaFields;
+		this.icmFields = icmFields;
+	}
+
+	/**
+	 * Extract ICA MetaFields and ICMMetaFields from the CAS.
+	 * <p>
+	 * @param  cas
+	 * @return the meta fields
+	 */
+	public static MetaFields extract(CAS cas) {
+		return extract(cas, true, true);
+	}
+
+	static MetaFields extract(CAS cas, boolean ica, boolean icm) {
+		Schema schema = schemas.get(cas.getTypeSystem());
+		MetaFieldMap icaFields = new MetaFieldMap();
+		MetaFieldMap icmFields = new MetaFieldMap();
+		if (schema.ica) {
+			if (ica)
+				read(cas, schema.metaField, icaFields);
+			if (icm)
+				read(cas, schema.icmMetaField, icmFields);
+		}
+		CASUtilsMetrics.get().metaFields(icaFields.valueCount() + icmFields.valueCount());
+		return new MetaFields(icaFields, icmFields);
+	}
+
+	private static void read(CAS cas, FieldType fieldType, MetaFieldMap fields) {
+		if (fieldType == null)
+			return;
+		FSIterator<FeatureStructure> metaIterator = cas.getIndexRepository().getAllIndexedFS(fieldType.type);
+		while (metaIterator.hasNext()) {
+			FeatureStructure fs = metaIterator.next();
+			String name = fs.getFeatureValueAsString(fieldType.name);
+			String value = fs.getFeatureValueAsString(fieldType.value);
+			if (name != null && !name.isEmpty())
+				if (value != null && !value.isEmpty())
+					fields.add(name, value);
+		}
+	}
+
+	/**
+	 * @return name value pairs from com.ibm.es.oze.MetaField
+	 */
+	public MetaFieldMap getICAFields() {
+		return icaFields;
+	}
+
+	/**
+	 * @return name value pairs from com.ibm.es.oze.ICMMetaField
+	 */
+	public MetaFieldMap getICMFields() {
+		return icmFields;
+	}
+
+	/**
+	 * A meta field type with name and value features.
+	 */
+	private static final class FieldType {
+		final Type type;
+		final Feature name;
+		final Feature value;
+
+		private FieldType(Type type, Feature name, Feature value) {
+			this.type = type;
+			this.name = name;
+			this.value = value;
+		}
+
+		static FieldType get(TypeSystem ts, String typeName) {
+			Type type = ts.getType(typeName);
+			if (type == null)
+				return null;
+			Feature name = type.getFeatureByBaseName("name");
+			Feature value = type.getFeatureByBaseName("value");
+			if (name == null || value == null)
+				return null;
+			return new FieldType(type, name, value);
+		}
+	}
+
+	/**
+	 * Meta field types of a type system.
+	 */
+	private static final class Schema {
+		final boolean ica;
+		final FieldType metaField;
+		final FieldType icmMetaField;
+
+		Schema(TypeSystem ts) {
+			ica = ts.getFeatureByFullName("uima.tcas.DocumentAnnotation:id") != null;
+			metaField = FieldType.get(ts, METAFIELD_TYPE);
+			icmMetaField = FieldType.get(ts, ICM_METAFIELD_TYPE);
+		}
+	}
+}
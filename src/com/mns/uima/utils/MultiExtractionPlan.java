@@ -0,0 +1,109 @@
+package com.mns.uima.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+
+/**
+ * Compiled plan for extracting several types in one pass over the annotation index.
+ * <p>
+ * Holds an {@link ExtractionPlan} per requested type and, for each concrete
+ * annotation type met during the pass, the list of plans whose type subsumes it.
+ * Plans are cached per type system and requested types and features, keeping up
+ * to {@value #MAX_PLANS} of those in use, and can be shared between threads.
+ */
+final class MultiExtractionPlan {
+	private static final int MAX_PLANS = 64;
+	private static final TypeSystemCache<PlanCache<Map<String, List<String>>, MultiExtractionPlan>> plans =
+			new TypeSystemCache<PlanCache<Map<String, List<String>>, MultiExtractionPlan>>(ts -> new PlanCache<Map<String, List<String>>, MultiExtractionPlan>(MAX_PLANS));
+
+	private static final Target[] NO_TARGETS = new Target[0];
+
+	private final TypeSystem ts;
+	private final ExtractionPlan[] typePlans;
+	private final String[] missingTypeNames;
+	private final ConcurrentHashMap<Type, Target[]> targets = new ConcurrentHashMap<Type, Target[]>();
+
+	private MultiExtractionPlan(TypeSystem ts, Map<String, List<String>> typeFeatures) {
+		this.ts = ts;
+		List<ExtractionPlan> found = new ArrayList<ExtractionPlan>();
+		List<String> missing = new ArrayList<String>();
+		for (Map.Entry<String, List<String>> entry : typeFeatures.entrySet()) {
+			ExtractionPlan plan = ExtractionPlan.get(ts, entry.getKey(), entry.getValue());
+			if (plan != null)
+				found.add(plan);
+			else
+				missing.add(entry.getKey());
+		}
+		this.typePlans = found.toArray(new ExtractionPlan[found.size()]);
+		this.missingTypeNames = missing.toArray(new String[missing.size()]);
+	}
+
+	/**
+	 * Get the plan for a map of type names to feature lists, compiling and caching it if needed.
+	 * <p>
+	 * @param  ts Type system the types should exist in
+	 * @param  typeFeatures Full type names mapped to the feature base names to be extracted.
+	 * @return the plan, types missing from the type system are reported by {@link #getMissingTypeNames()}.
+	 */
+	static MultiExtractionPlan get(TypeSystem ts, Map<String, ? extends List<String>> typeFeatures) {
+		PlanCache<Map<String, List<String>>, MultiExtractionPlan> tsPlans = plans.get(ts);
+		// any map with equal entries finds the plan, see Map.equals
+		MultiExtractionPlan plan = tsPlans.get(typeFeatures);
+		if (plan == null) {
+			Map<String, List<String>> key = new HashMap<String, List<String>>();
+			for (Map.Entry<String, ? extends List<String>> entry : typeFeatures.entrySet())
+				key.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+			plan = tsPlans.add(key, new MultiExtractionPlan(ts, key));
+		}
+		return plan;
+	}
+
+	ExtractionPlan[] getPlans() {
+		return typePlans;
+	}
+
+	String[] getMissingTypeNames() {
+		return missingTypeNames;
+	}
+
+	/**
+	 * Get the plans an annotation of a concrete type is extracted by.
+	 * <p>
+	 * @param  t the type of the annotation
+	 * @return targets, empty if no requested type subsumes t.
+	 */
+	Target[] targets(Type t) {
+		Target[] result = targets.get(t);
+		if (result == null) {
+			List<Target> list = new ArrayList<Target>();
+			for (int i = 0; i < typePlans.length; i++) {
+				if (ts.subsumes(typePlans[i].getType(), t))
+					list.add(new Target(i, typePlans[i].layout(t)));
+			}
+			result = list.isEmpty() ? NO_TARGETS : list.toArray(new Target[list.size()]);
+			Target[] existing = targets.putIfAbsent(t, result);
+			if (existing != null)
+				result = existing;
+		}
+		return result;
+	}
+
+	/**
+	 * A plan, by index into {@link #getPlans()}, and its layout for one concrete type.
+	 */
+	static final class Target {
+		final int plan;
+		final ExtractionPlan.Layout layout;
+
+		Target(int plan, ExtractionPlan.Layout layout) {
+			this.plan = plan;
+			this.layout = layout;
+		}
+	}
+}
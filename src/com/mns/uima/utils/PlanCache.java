@@ -0,0 +1,85 @@
+package com.mns.uima.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of compiled plans of one type system, read without locking.
+ * <p>
+ * A hit is a read of a concurrent map that marks the plan as used, so threads
+ * extracting with the same plans do not contend. Only adding a plan takes the
+ * lock. When the cache is full, the plans not used since the last eviction are
+ * dropped and the others lose their mark, so plans in use stay cached and plans
+ * built from one-off feature lists do not accumulate.
+ * <p>
+ * Lookups may use a key that borrows the caller's values, as long as it is
+ * equal to, and has the hash code of, the copy stored when the plan was added.
+ *
+ * @param <K> key, copied by the caller before it is stored
+ * @param <V> plan
+ */
+final class PlanCache<K, V> {
+	private final int maxPlans;
+	private final ConcurrentHashMap<K, Slot<V>> slots = new ConcurrentHashMap<K, Slot<V>>();
+
+	/**
+	 * @param maxPlans most plans held
+	 */
+	PlanCache(int maxPlans) {
+		this.maxPlans = maxPlans;
+	}
+
+	/**
+	 * @param  key key equal to the one the plan was added with
+	 * @return the plan or null.
+	 */
+	V get(Object key) {
+		Slot<V> slot = slots.get(key);
+		if (slot == null)
+			return null;
+		if (!slot.used)
+			slot.used = true;
+		return slot.value;
+	}
+
+	/**
+	 * Add a plan unless one was added for the key meanwhile.
+	 * <p>
+	 * @param  key key to store, not changed afterwards
+	 * @param  value the plan
+	 * @return the plan held for the key.
+	 */
+	synchronized V add(K key, V value) {
+		Slot<V> slot = slots.get(key);
+		if (slot != null)
+			return slot.value;
+		if (slots.size() >= maxPlans)
+			evict();
+		slots.put(key, new Slot<V>(value));
+		return value;
+	}
+
+	private void evict() {
+		for (Iterator<Slot<V>> it = slots.values().iterator(); it.hasNext();) {
+			Slot<V> slot = it.next();
+			if (slot.used)
+				slot.used = false;
+			else
+				it.remove();
+		}
+		// every plan was in use, drop some anyway
+		for (Iterator<K> it = slots.keySet().iterator(); slots.size() >= maxPlans && it.hasNext();) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	private static final class Slot<V> {
+		final V value;
+		volatile boolean used;
+
+		Slot(V value) {
+			this.value = value;
+		}
+	}
+}
@@ -15,8 +15,10 @@ import java.util.HashMap;
 public class PrimitiveAFS {
 	private String typeStr;
 	private String coveredText;
+	private String documentText;
 	private int begin, end;
 	private HashMap<String, String> features;
+	private HashMap<String, Object> arrays;
 	public int getBegin() {
 		return begin;
 	}
@@ -39,17 +41,74 @@ public class PrimitiveAFS {
 		} else
 			features.put("end", Integer.toString(end));
 	}
+	/**
+	 * Set begin and end without adding them to the features.
+	 */
+	void setSpan(int begin, int end) {
+		this.begin = begin;
+		this.end = end;
+	}
 	public String getTypeStr() {
 		return typeStr;
 	}
 	public void setTypeStr(String typeStr) {
 		this.typeStr = typeStr;
 	}
+	/**
+	 * Get the covered text, computing it from the document text if it was extracted lazily.
+	 */
 	public String getCoveredText() {
+		if (documentText != null) {
+			coveredText = documentText.substring(begin, end);
+			documentText = null;
+		}
 		return coveredText;
 	}
 	public void setCoveredText(String coveredText) {
 		this.coveredText = coveredText;
+		this.documentText = null;
+	}
+	/**
+	 * Set the document text the covered text is computed from on first use.
+	 */
+	void setDocumentText(String documentText) {
+		this.coveredText = null;
+		this.documentText = documentText;
+	}
+	/**
+	 * @return the document text the covered text will be computed from, or null.
+	 */
+	String documentText() {
+		return documentText;
+	}
+	/**
+	 * Copy out the covered text, and that of any FS array elements, so the document 
+	 * text is no longer referenced.
+	 * <p>
+	 * Has no effect unless the covered text was extracted lazily and not yet used.
+	 */
+	public void detach() {
+		getCoveredText();
+		if (arrays != null) {
+			for (Object value : arrays.values()) {
+				if (value instanceof SpanArray)
+					((SpanArray) value).detach();
+			}
+		}
+	}
+	/**
+	 * @return true if no covered text is computed from the document text.
+	 */
+	public boolean isDetached() {
+		if (documentText != null)
+			return false;
+		if (arrays != null) {
+			for (Object value : arrays.values()) {
+				if (value instanceof SpanArray && !((SpanArray) value).isDetached())
+					return false;
+			}
+		}
+		return true;
 	}
 	public HashMap<String, String> getFeatures() {
 		return features;
@@ -65,4 +124,64 @@ public class PrimitiveAFS {
 		}
 		return ret;
 	}
+	/**
+	 * Get the elements of an array feature, held when full arrays are extracted.
+	 * <p>
+	 * @param  feature base name of the feature
+	 * @return int[], float[], String[], long[], double[], short[], byte[], boolean[]
+	 *         or a SpanArray for an FS array, or null if the feature was not extracted
+	 *         as an array or its value is null.
+	 * @see    ExtractionOptions#setFullArrays(boolean)
+	 */
+	public Object getArrayValue(String feature) {
+		return arrays == null ? null : arrays.get(feature);
+	}
+	/**
+	 * @return the elements of an integer array feature or null.
+	 */
+	public int[] getIntArray(String feature) {
+		Object value = getArrayValue(feature);
+		return value instanceof int[] ? (int[]) value : null;
+	}
+	/**
+	 * @return the elements of a float array feature or null.
+	 */
+	public float[] getFloatArray(String feature) {
+		Object value = getArrayValue(feature);
+		return value instanceof float[] ? (float[]) value : null;
+	}
+	/**
+	 * @return the elements of a string array feature or null.
+	 */
+	public String[] getStringArray(String feature) {
+		Object value = getArrayValue(feature);
+		return value instanceof String[] ? (String[]) value : null;
+	}
+	/**
+	 * @return the offsets and covered text of the elements of an FS array feature or null.
+	 */
+	public SpanArray getSpanArray(String feature) {
+		Object value = getArrayValue(feature);
+		return value instanceof SpanArray ? (SpanArray) value : null;
+	}
+	void setArrayValue(String feature, Object value) {
+		if (value == null) {
+			if (arrays != null)
+				arrays.remove(feature);
+		} else {
+			if (arrays == null)
+				arrays = new HashMap<String, Object>();
+			arrays.put(feature, value);
+		}
+	}
+	/**
+	 * @return feature names mapped to the array values held, or null if there are none.
+	 */
+	HashMap<String, Object> arrayValues() {
+		return arrays == null || arrays.isEmpty() ? null : arrays;
+	}
+	void clearArrayValues() {
+		if (arrays != null)
+			arrays.clear();
+	}
 }
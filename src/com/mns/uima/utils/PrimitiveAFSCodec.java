@@ -0,0 +1,617 @@
+package com.mns.uima.utils;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of extracted annotations.
+ * <p>
+ * A batch, typically the annotations extracted from one document, is encoded as
+ * a header, the optional document text, a dictionary holding every type name,
+ * feature name, feature value and covered text once, then the annotations. Each
+ * annotation is its type and feature names and values as dictionary indexes, its
+ * begin as a difference from the previous annotation's begin and its length, all
+ * as variable length integers. When the document text is included covered text
+ * that matches it is written as nothing more than the offsets. Null strings, such
+ * as a type name that was never set, are kept as null.
+ * <p>
+ * Batches are written one after another to a buffer or channel, {@link #decode(ByteBuffer)}
+ * reads one batch from the buffer's position so a file of batches can be mapped
+ * and read without loading it first. Each string is decoded once into a new String,
+ * the annotations do not refer to the buffer. Decoded annotations share the one
+ * decoded document text and compute their covered text from it on first use, as
+ * lazily extracted annotations do, see {@link PrimitiveAFS#detach()}.
+ * <p>
+ * Full array values, see {@link ExtractionOptions#setFullArrays(boolean)}, follow
+ * the annotation's features: primitive arrays element by element and FS arrays as
+ * a {@link SpanArray} whose covered text is taken from the document text like the
+ * annotation's own. Annotations are always decoded as plain PrimitiveAFS, so a
+ * CompactPrimitiveAFS comes back with the same values in map storage.
+ */
+public final class PrimitiveAFSCodec {
+	static final int MAGIC = 0x50414653; // "PAFS"
+	static final byte VERSION = 3;
+	private static final byte VERSION_NO_NULLS = 1; // string lengths without the null sentinel
+	private static final byte VERSION_NO_ARRAYS = 2;
+
+	private static final int HAS_DOCUMENT_TEXT = 1;
+	private static final int REFERENCES_DOCUMENT_TEXT = 2; // covered text refers to a document text held elsewhere
+
+	// annotation flags
+	private static final int SPAN_FEATURES = 1; // begin and end are also in the features
+	private static final int TEXT_FROM_DOCUMENT = 2;
+	private static final int TEXT_IN_DICTIONARY = 4;
+	private static final int HAS_ARRAYS = 8;
+
+	// array kinds
+	private static final byte INT_ARRAY = 0;
+	private static final byte FLOAT_ARRAY = 1;
+	private static final byte STRING_ARRAY = 2;
+	private static final byte LONG_ARRAY = 3;
+	private static final byte DOUBLE_ARRAY = 4;
+	private static final byte SHORT_ARRAY = 5;
+	private static final byte BYTE_ARRAY = 6;
+	private static final byte BOOLEAN_ARRAY = 7;
+	private static final byte SPAN_ARRAY = 8;
+
+	private PrimitiveAFSCodec() {
+	}
+
+	/**
+	 * Encode a batch of annotations.
+	 * <p>
+	 * @param  annotations extracted annotations, of any types
+	 * @param  documentText the document the annotations were extracted from, or null to write every covered text
+	 * @return buffer holding the batch, ready to be read or written
+	 */
+	public static ByteBuffer encode(List<? extends PrimitiveAFS> annotations, String documentText) {
+		Output out = new Output(64 + annotations.size() * 16 + (documentText == null ? 0 : documentText.length()));
+		encode(annotations, documentText, true, out);
+		out.buffer.flip();
+		return out.buffer;
+	}
+
+	/**
+	 * Encode a batch whose covered text refers to a document text that is not written.
+	 * <p>
+	 * Used for batches that are only decoded by the writer, which passes the same
+	 * document text to {@link #decode(ByteBuffer, String)}.
+	 */
+	static ByteBuffer encodeReferencing(List<? extends PrimitiveAFS> annotations, String documentText) {
+		Output out = new Output(64 + annotations.size() * 16);
+		encode(annotations, documentText, false, out);
+		out.buffer.flip();
+		return out.buffer;
+	}
+
+	/**
+	 * Encode a batch of annotations and write it to a channel, e.g. a FileChannel.
+	 * <p>
+	 * @param  annotations extracted annotations, of any types
+	 * @param  documentText the document the annotations were extracted from, or null to write every covered text
+	 * @param  channel to write to
+	 * @return number of bytes written
+	 * @throws IOException if the channel cannot be written.
+	 */
+	public static int write(List<? extends PrimitiveAFS> annotations, String documentText, WritableByteChannel channel) throws IOException {
+		ByteBuffer buffer = encode(annotations, documentText);
+		int size = buffer.remaining();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		return size;
+	}
+
+	/**
+	 * Decode a batch of annotations from the buffer's position.
+	 * <p>
+	 * On return the position is after the batch.
+	 * <p>
+	 * @param  in buffer holding the batch
+	 * @return the annotations in the order they were encoded
+	 * @throws IllegalArgumentException if the buffer does not hold a batch or the batch
+	 *         is truncated or corrupt.
+	 */
+	public static ArrayList<PrimitiveAFS> decode(ByteBuffer in) {
+		return decode(in, null);
+	}
+
+	/**
+	 * Decode a batch, supplying the document text of a batch that only refers to it.
+	 * <p>
+	 * @param  in buffer holding the batch
+	 * @param  referencedText the text given to {@link #encodeReferencing(List, String)} or null
+	 * @return the annotations in the order they were encoded
+	 * @throws IllegalArgumentException if the buffer does not hold a batch, the batch is
+	 *         truncated or corrupt, or it refers to a document text that was not supplied.
+	 */
+	static ArrayList<PrimitiveAFS> decode(ByteBuffer in, String referencedText) {
+		try {
+			return decodeBatch(in, referencedText);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IllegalArgumentException("Truncated or corrupt PrimitiveAFS batch", e);
+		}
+	}
+
+	private static ArrayList<PrimitiveAFS> decodeBatch(ByteBuffer in, String referencedText) {
+		if (in.getInt() != MAGIC)
+			throw new IllegalArgumentException("Not an encoded PrimitiveAFS batch");
+		byte version = in.get();
+		if (version < VERSION_NO_NULLS || version > VERSION)
+			throw new IllegalArgumentException("Unsupported PrimitiveAFS batch version " + version);
+		Input input = new Input(in, version != VERSION_NO_NULLS);
+		boolean arrays = version > VERSION_NO_ARRAYS;
+		int flags = in.get();
+		String documentText = (flags & HAS_DOCUMENT_TEXT) != 0 ? input.readString() : null;
+		if ((flags & REFERENCES_DOCUMENT_TEXT) != 0) {
+			if (referencedText == null)
+				throw new IllegalArgumentException("PrimitiveAFS batch refers to a document text that was not supplied");
+			documentText = referencedText;
+		}
+
+		String[] dictionary = new String[input.readCount(1)];
+		for (int i = 0; i < dictionary.length; i++)
+			dictionary[i] = input.readString();
+
+		int count = input.readCount(5);
+		ArrayList<PrimitiveAFS> annotations = new ArrayList<PrimitiveAFS>(count);
+		int begin = 0;
+		for (int i = 0; i < count; i++) {
+			int annotationFlags = input.readVarInt();
+			PrimitiveAFS pafs = new PrimitiveAFS();
+			pafs.setTypeStr(dictionary[input.readVarInt()]);
+			begin += input.readSignedVarInt();
+			int end = begin + input.readVarInt();
+			HashMap<String, String> features = new HashMap<String, String>();
+			int featureCount = input.readVarInt();
+			for (int f = 0; f < featureCount; f++) {
+				String name = dictionary[input.readVarInt()];
+				int value = input.readVarInt();
+				features.put(name, value == 0 ? null : dictionary[value - 1]);
+			}
+			pafs.setFeatures(features);
+			if ((annotationFlags & SPAN_FEATURES) != 0) {
+				pafs.setBegin(begin);
+				pafs.setEnd(end);
+			} else {
+				pafs.setSpan(begin, end);
+			}
+			if ((annotationFlags & TEXT_FROM_DOCUMENT) != 0)
+				pafs.setDocumentText(documentText);
+			else if ((annotationFlags & TEXT_IN_DICTIONARY) != 0)
+				pafs.setCoveredText(dictionary[input.readVarInt()]);
+			if (arrays && (annotationFlags & HAS_ARRAYS) != 0)
+				readArrays(pafs, dictionary, documentText, input);
+			annotations.add(pafs);
+		}
+		return annotations;
+	}
+
+	/**
+	 * Read every batch of a file written with {@link #write(List, String, WritableByteChannel)}.
+	 * <p>
+	 * The file is mapped and decoded in place.
+	 * <p>
+	 * @param  channel file of batches
+	 * @return the batches in file order
+	 * @throws IOException if the file cannot be mapped, e.g. it is 2GB or more.
+	 */
+	public static ArrayList<ArrayList<PrimitiveAFS>> readAll(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("File too large to map: " + size);
+		MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		ArrayList<ArrayList<PrimitiveAFS>> batches = new ArrayList<ArrayList<PrimitiveAFS>>();
+		while (in.hasRemaining())
+			batches.add(decode(in));
+		return batches;
+	}
+
+	private static void encode(List<? extends PrimitiveAFS> annotations, String documentText, boolean writeDocumentText, Output out) {
+		// the dictionary is written first so is built in a pass of its own
+		Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		List<String> entries = new ArrayList<String>();
+		int[] flags = new int[annotations.size()];
+		List<Map<String, String>> features = new ArrayList<Map<String, String>>(annotations.size());
+		int i = 0;
+		for (PrimitiveAFS pafs : annotations) {
+			Map<String, String> annotationFeatures = pafs.getFeatures();
+			if (annotationFeatures == null)
+				annotationFeatures = new HashMap<String, String>();
+			int annotationFlags = 0;
+			if (Integer.toString(pafs.getBegin()).equals(annotationFeatures.get("begin"))
+					&& Integer.toString(pafs.getEnd()).equals(annotationFeatures.get("end")))
+				annotationFlags |= SPAN_FEATURES;
+			add(dictionary, entries, pafs.getTypeStr());
+			for (Map.Entry<String, String> feature : annotationFeatures.entrySet()) {
+				add(dictionary, entries, feature.getKey());
+				if (feature.getValue() != null)
+					add(dictionary, entries, feature.getValue());
+			}
+			if (documentText != null && coversDocumentText(pafs, documentText)) {
+				annotationFlags |= TEXT_FROM_DOCUMENT;
+			} else if (pafs.getCoveredText() != null) {
+				annotationFlags |= TEXT_IN_DICTIONARY;
+				add(dictionary, entries, pafs.getCoveredText());
+			}
+			Map<String, Object> arrays = pafs.arrayValues();
+			if (arrays != null) {
+				annotationFlags |= HAS_ARRAYS;
+				for (Map.Entry<String, Object> array : arrays.entrySet()) {
+					add(dictionary, entries, array.getKey());
+					addArrayStrings(dictionary, entries, array.getValue(), documentText);
+				}
+			}
+			flags[i++] = annotationFlags;
+			features.add(annotationFeatures);
+		}
+
+		out.ensure(6);
+		out.buffer.putInt(MAGIC);
+		out.buffer.put(VERSION);
+		out.buffer.put((byte) (documentText == null ? 0 : writeDocumentText ? HAS_DOCUMENT_TEXT : REFERENCES_DOCUMENT_TEXT));
+		if (documentText != null && writeDocumentText)
+			out.writeString(documentText);
+		out.writeVarInt(entries.size());
+		for (String entry : entries)
+			out.writeString(entry);
+
+		out.writeVarInt(annotations.size());
+		int previousBegin = 0;
+		i = 0;
+		for (PrimitiveAFS pafs : annotations) {
+			int annotationFlags = flags[i];
+			Map<String, String> annotationFeatures = features.get(i++);
+			out.writeVarInt(annotationFlags);
+			out.writeVarInt(dictionary.get(pafs.getTypeStr()));
+			out.writeSignedVarInt(pafs.getBegin() - previousBegin);
+			out.writeVarInt(pafs.getEnd() - pafs.getBegin());
+			previousBegin = pafs.getBegin();
+			boolean skipSpan = (annotationFlags & SPAN_FEATURES) != 0;
+			out.writeVarInt(annotationFeatures.size() - (skipSpan ? 2 : 0));
+			for (Map.Entry<String, String> feature : annotationFeatures.entrySet()) {
+				if (skipSpan && ("begin".equals(feature.getKey()) || "end".equals(feature.getKey())))
+					continue;
+				out.writeVarInt(dictionary.get(feature.getKey()));
+				out.writeVarInt(feature.getValue() == null ? 0 : dictionary.get(feature.getValue()) + 1);
+			}
+			if ((annotationFlags & TEXT_IN_DICTIONARY) != 0)
+				out.writeVarInt(dictionary.get(pafs.getCoveredText()));
+			if ((annotationFlags & HAS_ARRAYS) != 0)
+				writeArrays(pafs.arrayValues(), dictionary, documentText, out);
+		}
+	}
+
+	private static void addArrayStrings(Map<String, Integer> dictionary, List<String> entries, Object array, String documentText) {
+		if (array instanceof String[]) {
+			for (String value : (String[]) array) {
+				if (value != null)
+					add(dictionary, entries, value);
+			}
+		} else if (array instanceof SpanArray) {
+			SpanArray spans = (SpanArray) array;
+			for (int i = 0; i < spans.size(); i++) {
+				String text = spanText(spans, i, documentText);
+				if (text != null)
+					add(dictionary, entries, text);
+			}
+		}
+	}
+
+	/**
+	 * Write each array as its name, kind, length and elements.
+	 */
+	private static void writeArrays(Map<String, Object> arrays, Map<String, Integer> dictionary, String documentText, Output out) {
+		out.writeVarInt(arrays.size());
+		for (Map.Entry<String, Object> entry : arrays.entrySet()) {
+			out.writeVarInt(dictionary.get(entry.getKey()));
+			Object array = entry.getValue();
+			if (array instanceof int[]) {
+				int[] values = (int[]) array;
+				out.writeArrayHeader(INT_ARRAY, values.length);
+				for (int value : values)
+					out.writeSignedVarInt(value);
+			} else if (array instanceof float[]) {
+				float[] values = (float[]) array;
+				out.writeArrayHeader(FLOAT_ARRAY, values.length);
+				out.ensure(values.length * 4);
+				for (float value : values)
+					out.buffer.putFloat(value);
+			} else if (array instanceof String[]) {
+				String[] values = (String[]) array;
+				out.writeArrayHeader(STRING_ARRAY, values.length);
+				for (String value : values)
+					out.writeVarInt(value == null ? 0 : dictionary.get(value) + 1);
+			} else if (array instanceof long[]) {
+				long[] values = (long[]) array;
+				out.writeArrayHeader(LONG_ARRAY, values.length);
+				out.ensure(values.length * 8);
+				for (long value : values)
+					out.buffer.putLong(value);
+			} else if (array instanceof double[]) {
+				double[] values = (double[]) array;
+				out.writeArrayHeader(DOUBLE_ARRAY, values.length);
+				out.ensure(values.length * 8);
+				for (double value : values)
+					out.buffer.putDouble(value);
+			} else if (array instanceof short[]) {
+				short[] values = (short[]) array;
+				out.writeArrayHeader(SHORT_ARRAY, values.length);
+				for (short value : values)
+					out.writeSignedVarInt(value);
+			} else if (array instanceof byte[]) {
+				byte[] values = (byte[]) array;
+				out.writeArrayHeader(BYTE_ARRAY, values.length);
+				out.ensure(values.length);
+				out.buffer.put(values);
+			} else if (array instanceof boolean[]) {
+				boolean[] values = (boolean[]) array;
+				out.writeArrayHeader(BOOLEAN_ARRAY, values.length);
+				out.ensure(values.length);
+				for (boolean value : values)
+					out.buffer.put((byte) (value ? 1 : 0));
+			} else {
+				SpanArray spans = (SpanArray) array;
+				out.writeArrayHeader(SPAN_ARRAY, spans.size());
+				for (int i = 0; i < spans.size(); i++) {
+					out.writeVarInt(spans.getId(i));
+					out.writeSignedVarInt(spans.getBegin(i));
+					out.writeSignedVarInt(spans.getEnd(i));
+					String text = spanText(spans, i, documentText);
+					out.writeVarInt(text == null ? 0 : dictionary.get(text) + 1);
+				}
+			}
+		}
+	}
+
+	private static void readArrays(PrimitiveAFS pafs, String[] dictionary, String documentText, Input input) {
+		ByteBuffer in = input.buffer;
+		int count = input.readCount(3);
+		for (int a = 0; a < count; a++) {
+			String name = dictionary[input.readVarInt()];
+			byte kind = in.get();
+			int length = input.readCount(kind == LONG_ARRAY || kind == DOUBLE_ARRAY ? 8 : kind == FLOAT_ARRAY ? 4 : 1);
+			Object array;
+			switch (kind) {
+			case INT_ARRAY: {
+				int[] values = new int[length];
+				for (int i = 0; i < length; i++)
+					values[i] = input.readSignedVarInt();
+				array = values;
+				break;
+			}
+			case FLOAT_ARRAY: {
+				float[] values = new float[length];
+				for (int i = 0; i < length; i++)
+					values[i] = in.getFloat();
+				array = values;
+				break;
+			}
+			case STRING_ARRAY: {
+				String[] values = new String[length];
+				for (int i = 0; i < length; i++) {
+					int value = input.readVarInt();
+					values[i] = value == 0 ? null : dictionary[value - 1];
+				}
+				array = values;
+				break;
+			}
+			case LONG_ARRAY: {
+				long[] values = new long[length];
+				for (int i = 0; i < length; i++)
+					values[i] = in.getLong();
+				array = values;
+				break;
+			}
+			case DOUBLE_ARRAY: {
+				double[] values = new double[length];
+				for (int i = 0; i < length; i++)
+					values[i] = in.getDouble();
+				array = values;
+				break;
+			}
+			case SHORT_ARRAY: {
+				short[] values = new short[length];
+				for (int i = 0; i < length; i++)
+					values[i] = (short) input.readSignedVarInt();
+				array = values;
+				break;
+			}
+			case BYTE_ARRAY: {
+				byte[] values = new byte[length];
+				in.get(values);
+				array = values;
+				break;
+			}
+			case BOOLEAN_ARRAY: {
+				boolean[] values = new boolean[length];
+				for (int i = 0; i < length; i++)
+					values[i] = in.get() != 0;
+				array = values;
+				break;
+			}
+			case SPAN_ARRAY: {
+				int[] ids = new int[length];
+				int[] begins = new int[length];
+				int[] ends = new int[length];
+				String[] coveredText = new String[length];
+				for (int i = 0; i < length; i++) {
+					ids[i] = input.readVarInt();
+					begins[i] = input.readSignedVarInt();
+					ends[i] = input.readSignedVarInt();
+					int text = input.readVarInt();
+					if (text != 0)
+						coveredText[i] = dictionary[text - 1];
+					else if (begins[i] >= 0 && documentText != null && (begins[i] > ends[i] || ends[i] > documentText.length()))
+						throw new IllegalArgumentException("Corrupt PrimitiveAFS batch, FS array element outside the document text");
+				}
+				array = SpanArray.of(ids, begins, ends, coveredText, documentText);
+				break;
+			}
+			default:
+				throw new IllegalArgumentException("Corrupt PrimitiveAFS batch, array kind " + kind);
+			}
+			pafs.setArrayValue(name, array);
+		}
+	}
+
+	/**
+	 * @return the covered text of an FS array element to write, or null if it is not an
+	 *         annotation or its text is taken from the document text.
+	 */
+	private static String spanText(SpanArray spans, int i, String documentText) {
+		if (!spans.isAnnotation(i))
+			return null;
+		if (documentText != null && spans.documentText() == documentText && !spans.hasCoveredText(i))
+			return null; // lazily extracted from this document, no need to compute it
+		String text = spans.getCoveredText(i);
+		if (documentText != null && text != null && spans.getEnd(i) <= documentText.length()
+				&& text.length() == spans.getEnd(i) - spans.getBegin(i)
+				&& documentText.regionMatches(spans.getBegin(i), text, 0, text.length()))
+			return null;
+		return text;
+	}
+
+	private static boolean coversDocumentText(PrimitiveAFS pafs, String documentText) {
+		if (pafs.getBegin() < 0 || pafs.getEnd() < pafs.getBegin() || pafs.getEnd() > documentText.length())
+			return false;
+		if (pafs.documentText() == documentText)
+			return true; // lazily extracted from this document, no need to compute it
+		String coveredText = pafs.getCoveredText();
+		return coveredText != null && coveredText.length() == pafs.getEnd() - pafs.getBegin()
+				&& documentText.regionMatches(pafs.getBegin(), coveredText, 0, coveredText.length());
+	}
+
+	private static void add(Map<String, Integer> dictionary, List<String> entries, String entry) {
+		if (!dictionary.containsKey(entry)) {
+			dictionary.put(entry, entries.size());
+			entries.add(entry);
+		}
+	}
+
+	/**
+	 * Buffer that grows as it is written.
+	 */
+	private static final class Output {
+		ByteBuffer buffer;
+
+		Output(int capacity) {
+			buffer = ByteBuffer.allocate(capacity);
+		}
+
+		void ensure(int bytes) {
+			if (buffer.remaining() < bytes) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+				buffer.flip();
+				grown.put(buffer);
+				buffer = grown;
+			}
+		}
+
+		void writeVarInt(int value) {
+			ensure(5);
+			while ((value & ~0x7F) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		void writeSignedVarInt(int value) {
+			writeVarInt((value << 1) ^ (value >> 31));
+		}
+
+		void writeArrayHeader(byte kind, int length) {
+			ensure(1);
+			buffer.put(kind);
+			writeVarInt(length);
+		}
+
+		/**
+		 * Write the length plus one, or 0 for null, then the UTF-8 bytes.
+		 */
+		void writeString(String value) {
+			if (value == null) {
+				writeVarInt(0);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes.length + 1);
+			ensure(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	/**
+	 * Reads from a heap or direct buffer, strings are decoded from the backing array where there is one.
+	 */
+	private static final class Input {
+		final ByteBuffer buffer;
+		final boolean nulls;
+		byte[] scratch;
+
+		Input(ByteBuffer buffer, boolean nulls) {
+			this.buffer = buffer;
+			this.nulls = nulls;
+		}
+
+		int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (shift > 28)
+					throw new IllegalArgumentException("Malformed variable length integer");
+				b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		/**
+		 * Read a count of items that each take at least some bytes, checked against the bytes left.
+		 */
+		int readCount(int minBytes) {
+			int count = readVarInt();
+			if (count < 0 || (long) count * minBytes > buffer.remaining())
+				throw new IllegalArgumentException("Corrupt PrimitiveAFS batch, count " + count + " exceeds the bytes left");
+			return count;
+		}
+
+		int readSignedVarInt() {
+			int value = readVarInt();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		String readString() {
+			int length = readVarInt();
+			if (nulls) {
+				if (length == 0)
+					return null;
+				length--;
+			}
+			if (length < 0 || length > buffer.remaining())
+				throw new BufferUnderflowException();
+			String value;
+			if (buffer.hasArray()) {
+				value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			} else {
+				if (scratch == null || scratch.length < length)
+					scratch = new byte[Math.max(length, 256)];
+				buffer.get(scratch, 0, length);
+				value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.mns.uima.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+
+/**
+ * Feature layout shared by all CompactPrimitiveAFS instances of one annotation type.
+ * <p>
+ * The schema maps each extracted feature name to a typed slot. Numeric and boolean
+ * features are held as raw bits in a long slot, everything else (strings and the
+ * values derived from Sentence, Paragraph, Lemma and array features) in a string slot.
+ * A schema is created once per extraction plan and annotation type so the per
+ * instance cost is just the slot arrays.
+ */
+public final class PrimitiveAFSSchema {
+	static final byte STRING = 0;
+	static final byte BOOLEAN = 1;
+	static final byte BYTE = 2;
+	static final byte SHORT = 3;
+	static final byte INT = 4;
+	static final byte LONG = 5;
+	static final byte FLOAT = 6;
+	static final byte DOUBLE = 7;
+
+	private final String typeName;
+	private final String[] featureNames;
+	private final byte[] kinds;
+	private final int[] slots;
+	private final HashMap<String, Integer> index;
+	private final int valueSlots;
+	private final int stringSlots;
+
+	PrimitiveAFSSchema(String typeName, String[] featureNames, byte[] kinds) {
+		this.typeName = typeName;
+		this.featureNames = featureNames;
+		this.kinds = kinds;
+		this.slots = new int[kinds.length];
+		this.index = new HashMap<String, Integer>();
+		int values = 0, strings = 0;
+		for (int i = 0; i < kinds.length; i++) {
+			slots[i] = kinds[i] == STRING ? strings++ : values++;
+			index.put(featureNames[i], i); // last wins, as when put into a map
+		}
+		this.valueSlots = values;
+		this.stringSlots = strings;
+	}
+
+	/**
+	 * Get the slot kind for a primitive range.
+	 * <p>
+	 * @param  range range type of a primitive feature
+	 * @return the slot kind, string for string and string subtype ranges.
+	 */
+	static byte kindOf(Type range) {
+		String name = range.getName();
+		if (name.equals(CAS.TYPE_NAME_BOOLEAN))
+			return BOOLEAN;
+		if (name.equals(CAS.TYPE_NAME_BYTE))
+			return BYTE;
+		if (name.equals(CAS.TYPE_NAME_SHORT))
+			return SHORT;
+		if (name.equals(CAS.TYPE_NAME_INTEGER))
+			return INT;
+		if (name.equals(CAS.TYPE_NAME_LONG))
+			return LONG;
+		if (name.equals(CAS.TYPE_NAME_FLOAT))
+			return FLOAT;
+		if (name.equals(CAS.TYPE_NAME_DOUBLE))
+			return DOUBLE;
+		return STRING;
+	}
+
+	/**
+	 * @return the full type name the schema was built for.
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * @return the feature base names in slot order.
+	 */
+	public List<String> getFeatureNames() {
+		return Collections.unmodifiableList(Arrays.asList(featureNames));
+	}
+
+	/**
+	 * Get the position of a feature in the schema.
+	 * <p>
+	 * @param  featureName base name of the feature
+	 * @return position or -1 if the feature is not part of the schema.
+	 */
+	public int indexOf(String featureName) {
+		Integer i = index.get(featureName);
+		return i == null ? -1 : i.intValue();
+	}
+
+	int size() {
+		return kinds.length;
+	}
+
+	String featureName(int i) {
+		return featureNames[i];
+	}
+
+	byte kind(int i) {
+		return kinds[i];
+	}
+
+	int slot(int i) {
+		return slots[i];
+	}
+
+	int valueSlots() {
+		return valueSlots;
+	}
+
+	int stringSlots() {
+		return stringSlots;
+	}
+
+	/**
+	 * Format a value slot the way UIMA's getFeatureValueAsString does.
+	 */
+	static String format(byte kind, long bits) {
+		switch (kind) {
+		case BOOLEAN:
+			return Boolean.toString(bits != 0);
+		case BYTE:
+		case SHORT:
+		case INT:
+			return Integer.toString((int) bits);
+		case LONG:
+			return Long.toString(bits);
+		case FLOAT:
+			return Float.toString(Float.intBitsToFloat((int) bits));
+		case DOUBLE:
+			return Double.toString(Double.longBitsToDouble(bits));
+		default:
+			throw new IllegalArgumentException("Not a value slot kind: " + kind);
+		}
+	}
+}
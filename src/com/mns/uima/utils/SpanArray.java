@@ -0,0 +1,150 @@
+package com.mns.uima.utils;
+
+import org.apache.uima.cas.ArrayFS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.impl.LowLevelCAS;
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * The elements of an FS array feature as offsets and covered text.
+ * <p>
+ * Extracted in place of the FSArray when full arrays are asked for, see
+ * {@link ExtractionOptions#setFullArrays(boolean)}. Each element is held as
+ * its address in the CAS, begin and end, e.g. the arguments of a relation.
+ * Elements that are not annotations have begin and end -1 and no covered
+ * text, null elements also have address 0.
+ */
+public final class SpanArray {
+	private final int[] ids;
+	private final int[] begins;
+	private final int[] ends;
+	private final String[] coveredText;
+	private String documentText;
+
+	private SpanArray(int[] ids, int[] begins, int[] ends, String[] coveredText, String documentText) {
+		this.ids = ids;
+		this.begins = begins;
+		this.ends = ends;
+		this.coveredText = coveredText;
+		this.documentText = documentText;
+	}
+
+	/**
+	 * Read the elements of an FS array.
+	 * <p>
+	 * @param  array the array
+	 * @param  documentText text to take covered text from on first use, or null
+	 *         to read the covered text of each element now. Elements of a view
+	 *         with another document text have their covered text read now.
+	 * @return the elements.
+	 */
+	static SpanArray of(ArrayFS array, String documentText) {
+		int n = array.size();
+		int[] ids = new int[n];
+		int[] begins = new int[n];
+		int[] ends = new int[n];
+		String[] coveredText = new String[n];
+		LowLevelCAS llc = array.getCAS().getLowLevelCAS();
+		for (int i = 0; i < n; i++) {
+			FeatureStructure fs = array.get(i);
+			if (fs instanceof AnnotationFS) {
+				AnnotationFS afs = (AnnotationFS) fs;
+				ids[i] = llc.ll_getFSRef(fs);
+				begins[i] = afs.getBegin();
+				ends[i] = afs.getEnd();
+				if (documentText == null || afs.getView().getDocumentText() != documentText)
+					coveredText[i] = afs.getCoveredText();
+			} else {
+				ids[i] = fs == null ? 0 : llc.ll_getFSRef(fs);
+				begins[i] = -1;
+				ends[i] = -1;
+			}
+		}
+		return new SpanArray(ids, begins, ends, coveredText, documentText);
+	}
+
+	/**
+	 * Rebuild decoded elements, see {@link PrimitiveAFSCodec}.
+	 * <p>
+	 * @param  coveredText text of each element, null to take it from the document text
+	 * @param  documentText text for elements without covered text, or null
+	 * @return the elements.
+	 */
+	static SpanArray of(int[] ids, int[] begins, int[] ends, String[] coveredText, String documentText) {
+		return new SpanArray(ids, begins, ends, coveredText, documentText);
+	}
+
+	/**
+	 * @return the document text covered text is taken from on first use, or null.
+	 */
+	String documentText() {
+		return documentText;
+	}
+
+	/**
+	 * @param  i index of the element
+	 * @return true if the covered text of the element is held rather than computed on first use.
+	 */
+	boolean hasCoveredText(int i) {
+		return coveredText[i] != null;
+	}
+
+	/**
+	 * @return number of elements.
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @param  i index of the element
+	 * @return address of the element in its CAS, 0 for a null element.
+	 */
+	public int getId(int i) {
+		return ids[i];
+	}
+
+	public int getBegin(int i) {
+		return begins[i];
+	}
+
+	public int getEnd(int i) {
+		return ends[i];
+	}
+
+	/**
+	 * @param  i index of the element
+	 * @return true if the element is an annotation.
+	 */
+	public boolean isAnnotation(int i) {
+		return begins[i] >= 0;
+	}
+
+	/**
+	 * @param  i index of the element
+	 * @return the covered text of the element or null if it is not an annotation.
+	 */
+	public String getCoveredText(int i) {
+		if (coveredText[i] == null && documentText != null && begins[i] >= 0)
+			coveredText[i] = documentText.substring(begins[i], ends[i]);
+		return coveredText[i];
+	}
+
+	/**
+	 * Copy out the covered text of every element so the document text is no longer referenced.
+	 */
+	void detach() {
+		if (documentText == null)
+			return;
+		for (int i = 0; i < coveredText.length; i++)
+			getCoveredText(i);
+		documentText = null;
+	}
+
+	/**
+	 * @return true if the covered text is held and not computed from the document text.
+	 */
+	boolean isDetached() {
+		return documentText == null;
+	}
+}
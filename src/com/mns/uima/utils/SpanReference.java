@@ -0,0 +1,99 @@
+package com.mns.uima.utils;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Reference to a sentence or paragraph stored in place of its covered text.
+ * <p>
+ * With {@link ExtractionOptions#setSpanReferences(boolean)} a Sentence or Paragraph
+ * feature is extracted as the address of the referenced annotation in its CAS and
+ * its offsets, formatted as <code>@address:begin-end</code>. Annotations in the same
+ * sentence share one reference string rather than each holding the sentence text.
+ * The text can be taken from the document text when it is needed, and while the
+ * CAS is unchanged the annotation itself can be found with
+ * {@link org.apache.uima.cas.impl.LowLevelCAS#ll_getFSForRef(int)}.
+ */
+public final class SpanReference {
+	private final int id;
+	private final int begin;
+	private final int end;
+
+	public SpanReference(int id, int begin, int end) {
+		this.id = id;
+		this.begin = begin;
+		this.end = end;
+	}
+
+	/**
+	 * @param  afs the referenced annotation
+	 * @return a reference to the annotation.
+	 */
+	static SpanReference of(AnnotationFS afs) {
+		return new SpanReference(afs.getCAS().getLowLevelCAS().ll_getFSRef(afs), afs.getBegin(), afs.getEnd());
+	}
+
+	/**
+	 * Read a reference from an extracted feature value.
+	 * <p>
+	 * @param  value feature value of a PrimitiveAFS
+	 * @return the reference or null if the value is not a reference.
+	 */
+	public static SpanReference parse(String value) {
+		if (value == null || value.length() < 5 || value.charAt(0) != '@')
+			return null;
+		int colon = value.indexOf(':');
+		int dash = value.indexOf('-', colon + 1);
+		if (colon < 0 || dash < 0)
+			return null;
+		try {
+			return new SpanReference(Integer.parseInt(value.substring(1, colon)),
+					Integer.parseInt(value.substring(colon + 1, dash)),
+					Integer.parseInt(value.substring(dash + 1)));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return address of the referenced annotation in its CAS.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public int getBegin() {
+		return begin;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @param  documentText text of the document the reference was extracted from
+	 * @return the covered text of the referenced annotation.
+	 */
+	public String getCoveredText(String documentText) {
+		return documentText.substring(begin, end);
+	}
+
+	@Override
+	public String toString() {
+		return "@" + id + ":" + begin + "-" + end;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * id + begin) + end;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof SpanReference))
+			return false;
+		SpanReference other = (SpanReference) o;
+		return id == other.id && begin == other.begin && end == other.end;
+	}
+}
@@ -0,0 +1,162 @@
+package com.mns.uima.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Append only list of extracted annotations that moves to a temporary file once it is large.
+ * <p>
+ * Up to the threshold annotations are held on the heap as usual. Beyond it they are
+ * encoded with {@link PrimitiveAFSCodec} in chunks of {@value #CHUNK_SIZE} and written
+ * to a temporary file, leaving only the chunk offsets and the unwritten tail on the
+ * heap. Only whole chunks are written, so a threshold below {@value #CHUNK_SIZE}
+ * acts as {@value #CHUNK_SIZE} and up to {@value #CHUNK_SIZE} annotations more than
+ * the threshold may be held. Reads of written annotations map and decode their chunk, keeping the last
+ * chunk decoded, so iterating in order decodes each chunk once. Covered text refers
+ * to the document text rather than being written where it matches it.
+ * <p>
+ * Annotations read back from the file are new PrimitiveAFS instances on each decode
+ * of their chunk, with their features and full array values but without compact
+ * storage, so a CompactPrimitiveAFS comes back as a PrimitiveAFS. Close the list to
+ * delete the file, after which it is empty. Like ArrayList it is not thread safe.
+ * <p>
+ * Used by the CASUtils list and map methods that take options and by
+ * {@link AnnotationWindowCursor} when {@link ExtractionOptions#setSpillThreshold(int)} is set.
+ */
+public final class SpillableAFSList extends AbstractList<PrimitiveAFS> implements RandomAccess, Closeable {
+	static final int CHUNK_SIZE = 4096;
+
+	private final int threshold;
+	private final String documentText;
+	private final ArrayList<PrimitiveAFS> pending = new ArrayList<PrimitiveAFS>();
+	private int spilled;
+	private long[] chunkOffsets = new long[16];
+	private long fileSize;
+	private Path file;
+	private FileChannel channel;
+	private int decodedChunk = -1;
+	private ArrayList<PrimitiveAFS> decoded;
+
+	/**
+	 * @param threshold number of annotations held on the heap before writing to a file
+	 * @param documentText text of the document the annotations are extracted from, or null.
+	 */
+	public SpillableAFSList(int threshold, String documentText) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("Invalid threshold " + threshold);
+		this.threshold = threshold;
+		this.documentText = documentText;
+	}
+
+	/**
+	 * Append an annotation, writing full chunks to the file once past the threshold
+	 * and at least one chunk is held.
+	 * <p>
+	 * @throws UncheckedIOException if the file cannot be written.
+	 */
+	@Override
+	public boolean add(PrimitiveAFS pafs) {
+		pending.add(pafs);
+		if (pending.size() >= CHUNK_SIZE && (isSpilled() || pending.size() > threshold))
+			spill();
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public PrimitiveAFS get(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		if (index >= spilled)
+			return pending.get(index - spilled);
+		return chunk(index / CHUNK_SIZE).get(index % CHUNK_SIZE);
+	}
+
+	@Override
+	public int size() {
+		return spilled + pending.size();
+	}
+
+	/**
+	 * @return true if annotations have been written to the file.
+	 */
+	public boolean isSpilled() {
+		return channel != null;
+	}
+
+	/**
+	 * @return number of bytes written to the file.
+	 */
+	public long getSpilledBytes() {
+		return fileSize;
+	}
+
+	/**
+	 * Delete the file and empty the list.
+	 */
+	@Override
+	public void close() throws IOException {
+		pending.clear();
+		spilled = 0;
+		decoded = null;
+		decodedChunk = -1;
+		modCount++;
+		if (channel != null) {
+			try {
+				channel.close();
+			} finally {
+				channel = null;
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	private void spill() {
+		try {
+			if (channel == null) {
+				file = Files.createTempFile("primitiveafs", ".spill");
+				channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			int written = 0;
+			while (pending.size() - written >= CHUNK_SIZE) {
+				ByteBuffer buffer = PrimitiveAFSCodec.encodeReferencing(pending.subList(written, written + CHUNK_SIZE), documentText);
+				int chunk = spilled / CHUNK_SIZE;
+				if (chunk + 1 >= chunkOffsets.length)
+					chunkOffsets = Arrays.copyOf(chunkOffsets, chunkOffsets.length * 2);
+				chunkOffsets[chunk] = fileSize;
+				while (buffer.hasRemaining())
+					fileSize += channel.write(buffer, fileSize);
+				chunkOffsets[chunk + 1] = fileSize;
+				spilled += CHUNK_SIZE;
+				written += CHUNK_SIZE;
+			}
+			pending.subList(0, written).clear();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private ArrayList<PrimitiveAFS> chunk(int chunk) {
+		if (chunk != decodedChunk) {
+			try {
+				long offset = chunkOffsets[chunk];
+				ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, offset, chunkOffsets[chunk + 1] - offset);
+				decoded = PrimitiveAFSCodec.decode(in, documentText);
+				decodedChunk = chunk;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return decoded;
+	}
+}
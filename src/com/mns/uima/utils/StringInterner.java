@@ -0,0 +1,91 @@
+package com.mns.uima.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of canonical instances of short, frequently repeated strings.
+ * <p>
+ * Feature values such as "true", language codes and category labels are read
+ * as new strings from every CAS. Results buffered across many documents can
+ * share one instance of each value by extracting with an interner, see
+ * {@link ExtractionOptions#setInterner(StringInterner)}.
+ * <p>
+ * The cache is a fixed size table indexed by string hash holding one string per
+ * slot. A string is replaced by the next one that hashes to its slot, so high
+ * cardinality values evict each other rather than grow the cache, and strings
+ * longer than the length limit are never held. Unlike {@link String#intern()}
+ * nothing is kept beyond the table. An interner can be shared between threads,
+ * concurrent updates of a slot can only lose a cached instance, never return a
+ * string that is not equal to the one given.
+ */
+public final class StringInterner {
+	public static final int DEFAULT_SIZE = 4096;
+	public static final int DEFAULT_MAX_LENGTH = 32;
+
+	private final AtomicReferenceArray<String> table;
+	private final int mask;
+	private final int maxLength;
+
+	/**
+	 * Create an interner of the default size holding strings up to the default length.
+	 */
+	public StringInterner() {
+		this(DEFAULT_SIZE, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * @param size number of slots, rounded up to a power of two
+	 * @param maxLength longest string held, longer strings are returned as given.
+	 */
+	public StringInterner(int size, int maxLength) {
+		if (size < 1 || size > 1 << 30)
+			throw new IllegalArgumentException("Invalid size " + size);
+		int slots = Integer.highestOneBit(size);
+		if (slots < size)
+			slots <<= 1;
+		this.table = new AtomicReferenceArray<String>(slots);
+		this.mask = slots - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Get the canonical instance of a string.
+	 * <p>
+	 * @param  s the string, may be null
+	 * @return an equal string held by the interner, or s which is then held in place
+	 *         of whatever shared its slot.
+	 */
+	public String intern(String s) {
+		if (s == null || s.length() > maxLength)
+			return s;
+		int h = s.hashCode();
+		int i = (h ^ (h >>> 16)) & mask;
+		String cached = table.get(i);
+		if (cached != null && (cached == s || cached.equals(s)))
+			return cached;
+		table.lazySet(i, s);
+		return s;
+	}
+
+	/**
+	 * @return number of slots.
+	 */
+	public int size() {
+		return table.length();
+	}
+
+	/**
+	 * @return longest string held.
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Drop every cached string.
+	 */
+	public void clear() {
+		for (int i = 0; i < table.length(); i++)
+			table.set(i, null);
+	}
+}
@@ -0,0 +1,73 @@
+package com.mns.uima.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.uima.cas.TypeSystem;
+
+/**
+ * Cache of values derived from a type system, such as compiled plans and feature handles.
+ * <p>
+ * Derived values hold Type and Feature objects which reference their type system,
+ * so a weak map keyed by type system would never clear. Instead the most recently
+ * used type systems are kept, a process normally only has one or a few.
+ * <p>
+ * The value of the type system last asked for is read without locking, so
+ * extractions on many threads sharing a type system do not contend. Only a
+ * lookup of another type system takes the lock.
+ *
+ * @param <V> value cached per type system
+ */
+final class TypeSystemCache<V> {
+	private static final int MAX_TYPE_SYSTEMS = 8;
+
+	private final Function<TypeSystem, V> factory;
+	private volatile Last<V> last;
+	private final LinkedHashMap<TypeSystem, V> values = new LinkedHashMap<TypeSystem, V>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TypeSystem, V> eldest) {
+			return size() > MAX_TYPE_SYSTEMS;
+		}
+	};
+
+	TypeSystemCache(Function<TypeSystem, V> factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Get the value for a type system, creating it if needed.
+	 * <p>
+	 * @param  ts the type system
+	 * @return the cached value
+	 */
+	V get(TypeSystem ts) {
+		Last<V> l = last;
+		if (l != null && l.ts == ts)
+			return l.value;
+		synchronized (this) {
+			V value = values.get(ts);
+			if (value == null) {
+				value = factory.apply(ts);
+				values.put(ts, value);
+			}
+			last = new Last<V>(ts, value);
+			return value;
+		}
+	}
+
+	/**
+	 * A type system and its value, published together.
+	 */
+	private static final class Last<V> {
+		final TypeSystem ts;
+		final V value;
+
+		Last(TypeSystem ts, V value) {
+			this.ts = ts;
+			this.value = value;
+		}
+	}
+}